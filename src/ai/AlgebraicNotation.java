@@ -0,0 +1,134 @@
+package ai;
+
+import static ai.BitBoards.*;
+import static ai.Move.MoveType.*;
+import static ai.Move.PieceType.*;
+
+/**
+ * Converts between moves and standard algebraic notation (SAN), e.g. "Nbd2", "exd6", "e8=Q+"
+ */
+class AlgebraicNotation {
+    private AlgebraicNotation() {
+    }
+
+    /**
+     * @param state current state
+     * @param move  legal move in the current state
+     * @return the move in standard algebraic notation, including check and checkmate markers
+     */
+    static String toSAN(BitBoards state, Move move) {
+        Move[] legalMoves = MoveGeneration.generateLegalMoves(state);
+        String san = toSANWithoutCheck(state, move, legalMoves);
+
+        BitBoards newState = state.tryMove(move);
+        if (!newState.safeSquare(newState.whiteToMove, newState.whiteToMove ? newState.whiteKing :
+                newState.blackKing)) {
+            san += MoveGeneration.generateLegalMoves(newState).length == 0 ? "#" : "+";
+        }
+        return san;
+    }
+
+    /**
+     * @param state current state
+     * @param san   move in standard algebraic notation, annotations such as "+" or "!?" are ignored
+     * @return the legal move matching the notation
+     * @throws IllegalArgumentException if no legal move matches
+     */
+    static Move fromSAN(BitBoards state, String san) {
+        String stripped = stripAnnotations(san).replace('0', 'O');
+        Move[] legalMoves = MoveGeneration.generateLegalMoves(state);
+        for (Move move : legalMoves) {
+            if (toSANWithoutCheck(state, move, legalMoves).equals(stripped)) {
+                return move;
+            }
+        }
+        // Some sources leave out the "=" of promotions
+        for (Move move : legalMoves) {
+            if (toSANWithoutCheck(state, move, legalMoves).replace("=", "").equals(stripped)) {
+                return move;
+            }
+        }
+        throw new IllegalArgumentException("No legal move matches " + san + " in\n" + state);
+    }
+
+    private static String stripAnnotations(String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) != -1) {
+            --end;
+        }
+        return san.substring(0, end);
+    }
+
+    private static String toSANWithoutCheck(BitBoards state, Move move, Move[] legalMoves) {
+        if (move.moveType() == CASTLE_RIGHT) {
+            return "O-O";
+        }
+        if (move.moveType() == CASTLE_LEFT) {
+            return "O-O-O";
+        }
+
+        StringBuilder san = new StringBuilder();
+        boolean capture = move.moveType() == EN_PASSANT ||
+                ((state.whiteToMove ? state.blackPieces : state.whitePieces) & SQUARE_TO_BITBOARD[move.end()]) != 0;
+        if (move.pieceType() == PAWN) {
+            if (capture) {
+                san.append(Move.indexToNotation(move.start()).charAt(0));
+            }
+        } else {
+            san.append(pieceLetter(move.pieceType()));
+            san.append(disambiguation(move, legalMoves));
+        }
+        if (capture) {
+            san.append('x');
+        }
+        san.append(Move.indexToNotation(move.end()));
+
+        switch (move.moveType()) {
+            case PROMOTE_QUEEN -> san.append("=Q");
+            case PROMOTE_ROOK -> san.append("=R");
+            case PROMOTE_BISHOP -> san.append("=B");
+            case PROMOTE_KNIGHT -> san.append("=N");
+            default -> {
+            }
+        }
+        return san.toString();
+    }
+
+    /**
+     * @return the file, rank, or both of the starting square if another piece of the same type
+     * can move to the same square
+     */
+    private static String disambiguation(Move move, Move[] legalMoves) {
+        boolean ambiguous = false, sameFile = false, sameRank = false;
+        for (Move other : legalMoves) {
+            if (other.pieceType() != move.pieceType() || other.end() != move.end() ||
+                    other.start() == move.start()) {
+                continue;
+            }
+            ambiguous = true;
+            sameFile |= other.start() % 8 == move.start() % 8;
+            sameRank |= other.start() / 8 == move.start() / 8;
+        }
+
+        String start = Move.indexToNotation(move.start());
+        if (!ambiguous) {
+            return "";
+        } else if (!sameFile) {
+            return start.substring(0, 1);
+        } else if (!sameRank) {
+            return start.substring(1);
+        }
+        return start;
+    }
+
+    private static char pieceLetter(Move.PieceType pieceType) {
+        return switch (pieceType) {
+            case KING -> 'K';
+            case QUEEN -> 'Q';
+            case ROOK -> 'R';
+            case BISHOP -> 'B';
+            case KNIGHT -> 'N';
+            default -> throw new IllegalArgumentException("No letter for piece: " + pieceType);
+        };
+    }
+}
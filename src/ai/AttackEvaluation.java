@@ -0,0 +1,140 @@
+package ai;
+
+import static ai.BitBoards.*;
+
+/**
+ * Piece activity terms that all come from one pass over the attacks of every piece: mobility,
+ * attacks on the squares around the enemy king, and pieces that are attacked but not defended
+ * <br>The pass also leaves the attack map of both sides cached on the state, so check detection
+ * and castling validation at the same node don't look up the attacks again
+ * <br>Scores are in centipawns from white's point of view
+ */
+final class AttackEvaluation {
+    // Pieces with mobility, indices into the tables below
+    private static final int KNIGHT = 0, BISHOP = 1, ROOK = 2, QUEEN = 3;
+    // Per reachable square, counted from the typical number of squares so a piece can also lose points
+    private static final int[] MOBILITY_MG = {4, 5, 2, 1};
+    private static final int[] MOBILITY_EG = {4, 5, 4, 2};
+    private static final int[] MOBILITY_BASE = {4, 6, 7, 13};
+    // Attack units for each piece that attacks the enemy king zone
+    private static final int[] KING_ATTACK_UNITS = {2, 2, 3, 5};
+    private static final int MAX_KING_DANGER = 500;
+    // Attacked and undefended pieces, indexed by piece type. The side to move can usually save or
+    // trade its own, so only a small part of the penalty applies to it
+    private static final int[] HANGING = {40, 40, 60, 100};
+    private static final int HANGING_TO_MOVE_DIVISOR = 4;
+
+    private AttackEvaluation() {
+    }
+
+    /**
+     * Also caches the attack maps of both sides on the state, see {@link BitBoards#attacks}
+     *
+     * @param state position to evaluate
+     * @return middlegame score in the high 32 bits and endgame score in the low 32 bits, see
+     * {@link PawnStructure#pack}
+     */
+    static long evaluate(BitBoards state) {
+        long whitePawnAttacks = pawnAttacks(state.whitePawns, true);
+        long blackPawnAttacks = pawnAttacks(state.blackPawns, false);
+        SideAttacks white = new SideAttacks(state, true, whitePawnAttacks, blackPawnAttacks);
+        SideAttacks black = new SideAttacks(state, false, blackPawnAttacks, whitePawnAttacks);
+        state.cacheAttacks(true, white.attacks);
+        state.cacheAttacks(false, black.attacks);
+
+        int mg = white.mobilityMg - black.mobilityMg;
+        int eg = white.mobilityEg - black.mobilityEg;
+        // Attackers of a side count against the enemy king
+        mg += kingDanger(white.kingAttackers, white.kingAttackUnits) -
+                kingDanger(black.kingAttackers, black.kingAttackUnits);
+
+        int whiteHanging = hanging(state, true, black.attacks & ~white.attacks);
+        int blackHanging = hanging(state, false, white.attacks & ~black.attacks);
+        if (state.whiteToMove) {
+            whiteHanging /= HANGING_TO_MOVE_DIVISOR;
+        } else {
+            blackHanging /= HANGING_TO_MOVE_DIVISOR;
+        }
+        mg -= whiteHanging - blackHanging;
+        eg -= whiteHanging - blackHanging;
+        return PawnStructure.pack(mg, eg);
+    }
+
+    /**
+     * @param pawns pawns of one side
+     * @param white side of the pawns
+     * @return every square the pawns attack
+     */
+    static long pawnAttacks(long pawns, boolean white) {
+        return white ? PawnStructure.east(pawns << 8) | PawnStructure.west(pawns << 8) :
+                PawnStructure.east(pawns >>> 8) | PawnStructure.west(pawns >>> 8);
+    }
+
+    /**
+     * Danger grows with the square of the attack units, and a lone attacker is ignored since it
+     * can rarely mate on its own
+     *
+     * @return bonus in centipawns for the attacking side
+     */
+    private static int kingDanger(int attackers, int units) {
+        return attackers < 2 ? 0 : Math.min(units * units, MAX_KING_DANGER);
+    }
+
+    /**
+     * @param undefended squares the enemy attacks and the side doesn't defend
+     * @return penalty for the pieces of the side on those squares
+     */
+    private static int hanging(BitBoards state, boolean white, long undefended) {
+        return Long.bitCount((white ? state.whiteKnights : state.blackKnights) & undefended) * HANGING[KNIGHT] +
+                Long.bitCount((white ? state.whiteBishops : state.blackBishops) & undefended) * HANGING[BISHOP] +
+                Long.bitCount((white ? state.whiteRooks : state.blackRooks) & undefended) * HANGING[ROOK] +
+                Long.bitCount((white ? state.whiteQueens : state.blackQueens) & undefended) * HANGING[QUEEN];
+    }
+
+    /**
+     * Attacks of one side, with mobility and king attacks counted while each piece is visited
+     */
+    private static final class SideAttacks {
+        long attacks;
+        int mobilityMg, mobilityEg;
+        int kingAttackers, kingAttackUnits;
+
+        private final long allPieces, safe, enemyKingZone;
+
+        SideAttacks(BitBoards state, boolean white, long pawnAttacks, long enemyPawnAttacks) {
+            allPieces = state.allPieces;
+            // Squares that are neither taken by own pieces nor attacked by enemy pawns
+            safe = ~(white ? state.whitePieces : state.blackPieces) & ~enemyPawnAttacks;
+            int enemyKing = Long.numberOfTrailingZeros(white ? state.blackKing : state.whiteKing);
+            enemyKingZone = KING_POSSIBLE_MOVES[enemyKing] | SQUARE_TO_BITBOARD[enemyKing];
+            attacks = pawnAttacks | KING_POSSIBLE_MOVES[Long.numberOfTrailingZeros(white ? state.whiteKing :
+                    state.blackKing)];
+
+            for (long knights = white ? state.whiteKnights : state.blackKnights; knights != 0; knights &= knights - 1) {
+                add(KNIGHT, KNIGHT_POSSIBLE_MOVES[Long.numberOfTrailingZeros(knights)]);
+            }
+            for (long bishops = white ? state.whiteBishops : state.blackBishops; bishops != 0; bishops &= bishops - 1) {
+                add(BISHOP, MoveGeneration.getBishopAttacks(Long.numberOfTrailingZeros(bishops), allPieces));
+            }
+            for (long rooks = white ? state.whiteRooks : state.blackRooks; rooks != 0; rooks &= rooks - 1) {
+                add(ROOK, MoveGeneration.getRookAttacks(Long.numberOfTrailingZeros(rooks), allPieces));
+            }
+            for (long queens = white ? state.whiteQueens : state.blackQueens; queens != 0; queens &= queens - 1) {
+                int square = Long.numberOfTrailingZeros(queens);
+                add(QUEEN, MoveGeneration.getRookAttacks(square, allPieces) |
+                        MoveGeneration.getBishopAttacks(square, allPieces));
+            }
+        }
+
+        private void add(int piece, long pieceAttacks) {
+            attacks |= pieceAttacks;
+            int mobility = Long.bitCount(pieceAttacks & safe) - MOBILITY_BASE[piece];
+            mobilityMg += mobility * MOBILITY_MG[piece];
+            mobilityEg += mobility * MOBILITY_EG[piece];
+            if ((pieceAttacks & enemyKingZone) != 0) {
+                ++kingAttackers;
+                kingAttackUnits += KING_ATTACK_UNITS[piece];
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package ai;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Searches many positions at once on a pool of workers, where each worker keeps its own
+ * {@link NegaMax} between positions
+ */
+public class BatchEvaluator implements AutoCloseable {
+    /**
+     * Order the results are given back in
+     */
+    public enum Order {
+        INPUT, COMPLETION
+    }
+
+    /**
+     * @param FEN    string encoding the position
+     * @param limits limits for searching this position
+     */
+    public record Position(String FEN, SearchLimits limits) {
+        public Position {
+            Objects.requireNonNull(FEN, "FEN");
+            Objects.requireNonNull(limits, "limits");
+        }
+    }
+
+    /**
+     * @param index      index of the position in the input
+     * @param position   position that was searched
+     * @param result     result of the search, or null if the search failed
+     * @param iterations results of every completed iteration of the search
+     * @param error      why the search failed, or null if it succeeded
+     */
+    public record Result(long index, Position position, SearchResult result, List<SearchResult> iterations,
+                         String error) {
+    }
+
+    /**
+     * Throughput of a single batch
+     *
+     * @param positions    number of positions searched
+     * @param errors       number of positions that failed
+     * @param nodes        total nodes of all searches
+     * @param searchMillis total time of all searches, summed over the workers
+     * @param wallMillis   time from the start to the end of the batch
+     * @param searchStats  counters of all searches added together
+     */
+    public record BatchStats(long positions, long errors, long nodes, long searchMillis, long wallMillis,
+                             SearchStats searchStats) {
+        public double positionsPerSecond() {
+            return wallMillis == 0 ? 0 : positions * 1000.0 / wallMillis;
+        }
+
+        public double nodesPerSecond() {
+            return wallMillis == 0 ? 0 : nodes * 1000.0 / wallMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d positions (%d errors), %d nodes in %d ms: %.1f positions/s, %.0f nodes/s%n%s",
+                    positions, errors, nodes, wallMillis, positionsPerSecond(), nodesPerSecond(), searchStats);
+        }
+    }
+
+    private final ExecutorService workers;
+    private final ThreadLocal<NegaMax> engines;
+    private final int maxPending;
+
+    /**
+     * @param threads number of workers
+     */
+    public BatchEvaluator(int threads) {
+        this(threads, EngineConfig.parse("book=false"));
+    }
+
+    /**
+     * @param threads number of workers
+     * @param config  settings of every worker's engine
+     */
+    public BatchEvaluator(int threads, EngineConfig config) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + threads);
+        }
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-evaluator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        EngineConfig engineConfig = config.copy();
+        // Evaluations don't depend on the search, so every worker can use the others' results
+        EvalCache evalCache = engineConfig.evalCacheMB == 0 ? null : new EvalCache(engineConfig.evalCacheMB);
+        this.engines = ThreadLocal.withInitial(() -> new NegaMax(engineConfig, evalCache));
+        // Enough to keep every worker busy without queueing the whole input
+        this.maxPending = threads * 4;
+    }
+
+    /**
+     * Searches every position, giving back each result as soon as the order allows. The
+     * positions are read lazily, so the stream can be larger than memory
+     *
+     * @param positions positions to search
+     * @param order     order the results are given back in
+     * @param results   receives every result on the calling thread
+     * @return throughput of the batch
+     */
+    public BatchStats evaluate(Stream<Position> positions, Order order, Consumer<Result> results) {
+        final long startTime = System.nanoTime();
+        Counter counter = new Counter();
+        Consumer<Result> countingResults = result -> {
+            counter.add(result);
+            results.accept(result);
+        };
+
+        Iterator<Position> iterator = positions.iterator();
+        if (order == Order.INPUT) {
+            evaluateInOrder(iterator, countingResults);
+        } else {
+            evaluateAsCompleted(iterator, countingResults);
+        }
+
+        return new BatchStats(counter.positions, counter.errors, counter.nodes, counter.searchMillis,
+                (System.nanoTime() - startTime) / 1_000_000, counter.searchStats);
+    }
+
+    private void evaluateInOrder(Iterator<Position> positions, Consumer<Result> results) {
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        long index = 0;
+        while (positions.hasNext()) {
+            pending.add(workers.submit(search(index++, positions.next())));
+            if (pending.size() >= maxPending) {
+                results.accept(await(pending.poll()));
+            }
+        }
+        while (!pending.isEmpty()) {
+            results.accept(await(pending.poll()));
+        }
+    }
+
+    private void evaluateAsCompleted(Iterator<Position> positions, Consumer<Result> results) {
+        CompletionService<Result> completed = new ExecutorCompletionService<>(workers);
+        int pending = 0;
+        long index = 0;
+        while (positions.hasNext()) {
+            completed.submit(search(index++, positions.next()));
+            ++pending;
+            Future<Result> done;
+            while ((done = pending >= maxPending ? take(completed) : completed.poll()) != null) {
+                results.accept(await(done));
+                --pending;
+            }
+        }
+        for (; pending > 0; --pending) {
+            results.accept(await(take(completed)));
+        }
+    }
+
+    private Callable<Result> search(long index, Position position) {
+        return () -> {
+            List<SearchResult> iterations = new ArrayList<>();
+            try {
+                SearchResult result = engines.get().search(position.FEN(), position.limits(), iterations::add);
+                return new Result(index, position, result, iterations, null);
+            } catch (RuntimeException e) {
+                return new Result(index, position, null, iterations, e.toString());
+            }
+        };
+    }
+
+    private static Future<Result> take(CompletionService<Result> completed) {
+        try {
+            return completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for results", e);
+        }
+    }
+
+    private static Result await(Future<Result> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for results", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch worker failed", e.getCause());
+        }
+    }
+
+    private static class Counter {
+        long positions, errors, nodes, searchMillis;
+        final SearchStats searchStats = new SearchStats();
+
+        void add(Result result) {
+            ++positions;
+            if (result.result() == null) {
+                ++errors;
+            } else {
+                nodes += result.result().nodes();
+                searchMillis += result.result().timeMillis();
+                searchStats.merge(result.result().stats());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,450 @@
+package ai;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Micro-benchmarks for the hot paths of the engine, run with warmup and measurement iterations
+ * like JMH so every performance change can be measured
+ * <br>Usage: java ai.Benchmark [regex] [--warmup n] [--iterations n] [--time ms]
+ * <br>Every benchmark runs once for each group of positions: opening, middlegame, and endgame
+ * <br>The nnue benchmarks run with SIMD kernels too when the vector source root is compiled and the
+ * JVM is started with --add-modules jdk.incubator.vector
+ * <br>With --nodes depth, searches every position to the fixed depth with each pruning technique
+ * turned off in turn instead, and prints the total number of nodes, which doesn't depend on the
+ * machine, so a change to the search can be checked for how much it shrinks the tree
+ */
+public class Benchmark {
+    private static final Map<String, String[]> POSITIONS = new LinkedHashMap<>();
+
+    static {
+        POSITIONS.put("opening", new String[]{
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "rnbqkb1r/pp2pppp/3p1n2/8/3NP3/8/PPP2PPP/RNBQKB1R w KQkq - 1 5",
+                "r1bqkbnr/pppp1ppp/2n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R b KQkq - 3 3",
+                "rnbqkb1r/ppp1pppp/5n2/3p4/2PP4/8/PP2PPPP/RNBQKBNR w KQkq - 1 3",
+        });
+        POSITIONS.put("middlegame", new String[]{
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+                "2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - 0 1",
+                "r1b2rk1/ppbn1ppp/4p3/1QP4q/3P4/N4N2/5PPP/R1B2RK1 w - - 0 1",
+        });
+        POSITIONS.put("endgame", new String[]{
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "8/8/4k3/3p4/3P4/4K3/8/8 w - - 0 1",
+                "8/5pk1/6p1/8/5P2/6PK/8/3r4 b - - 0 1",
+                "R7/P4k2/8/8/8/8/r7/6K1 w - - 0 1",
+        });
+    }
+
+    /**
+     * Consumes results so the JIT can't remove the benchmarked code
+     */
+    private static volatile long blackhole;
+
+    /**
+     * @param name  name of the benchmark
+     * @param setup builds the fixtures of the benchmark, only if it is selected, and returns the
+     *              operation, which runs the benchmarked code once on the prepared positions and
+     *              returns the number of operations it did
+     */
+    private record Case(String name, Supplier<ToLongFunction<Prepared>> setup) {
+        Case(String name, ToLongFunction<Prepared> operation) {
+            this(name, () -> operation);
+        }
+    }
+
+    /**
+     * Positions prepared outside of the measured code
+     *
+     * @param kingAndPawnStates the positions with only the kings and one pawn left, see {@link #kingAndPawn}
+     */
+    private record Prepared(String[] FENs, BitBoards[] states, Move[][] legalMoves, BitBoards[] kingAndPawnStates) {
+        static Prepared of(String[] FENs) {
+            BitBoards[] states = new BitBoards[FENs.length];
+            Move[][] legalMoves = new Move[FENs.length][];
+            BitBoards[] kingAndPawnStates = new BitBoards[FENs.length];
+            for (int i = 0; i < FENs.length; i++) {
+                states[i] = new BitBoards(FENs[i]);
+                legalMoves[i] = MoveGeneration.generateLegalMoves(states[i]);
+                kingAndPawnStates[i] = new BitBoards(kingAndPawn(FENs[i]));
+            }
+            return new Prepared(FENs, states, legalMoves, kingAndPawnStates);
+        }
+    }
+
+    private static final List<Case> CASES = new ArrayList<>();
+
+    static {
+        CASES.add(new Case("fen.parse", prepared -> {
+            for (String FEN : prepared.FENs()) {
+                blackhole += new BitBoards(FEN).allPieces;
+            }
+            return prepared.FENs().length;
+        }));
+        CASES.add(new Case("movegen.generateLegalMoves", prepared -> {
+            for (BitBoards state : prepared.states()) {
+                blackhole += MoveGeneration.generateLegalMoves(state).length;
+            }
+            return prepared.states().length;
+        }));
+        // The part of move generation a staged search pays for at a node cut off by a capture
+        CASES.add(new Case("movegen.generateCaptures", prepared -> {
+            Move[] captures = new Move[256];
+            for (BitBoards state : prepared.states()) {
+                blackhole += MoveGeneration.generateCaptures(state, captures, 0);
+            }
+            return prepared.states().length;
+        }));
+        CASES.add(new Case("make.tryMove", prepared -> {
+            long operations = 0;
+            for (int i = 0; i < prepared.states().length; i++) {
+                for (Move move : prepared.legalMoves()[i]) {
+                    blackhole += prepared.states()[i].tryMove(move).allPieces;
+                }
+                operations += prepared.legalMoves()[i].length;
+            }
+            return operations;
+        }));
+        // Same as in a search, where almost every pawn structure is already in the table
+        PawnHashTable pawnTable = new PawnHashTable(PawnHashTable.DEFAULT_ENTRIES);
+        CASES.add(new Case("eval.evaluateBoard", prepared -> {
+            for (int i = 0; i < prepared.states().length; i++) {
+                blackhole += prepared.states()[i].evaluateBoard(prepared.legalMoves()[i], pawnTable);
+            }
+            return prepared.states().length;
+        }));
+        // Evaluations per second of a network with random weights, which cost the same as trained ones
+        Supplier<NnueNetwork> network = lazily(() -> NnueNetwork.random(1));
+        NnueKernels bestKernels = NnueKernels.best();
+        for (NnueKernels kernels : bestKernels instanceof ScalarNnueKernels ? List.of(bestKernels) :
+                List.of(new ScalarNnueKernels(), bestKernels)) {
+            String name = kernels instanceof ScalarNnueKernels ? "scalar" : "vector";
+            // The dense layers, since the accumulators are only computed the first time
+            CASES.add(new Case("nnue.evaluate." + name, () -> {
+                Nnue nnue = new Nnue(network.get(), kernels);
+                return prepared -> {
+                    for (BitBoards state : prepared.states()) {
+                        blackhole += nnue.evaluate(state);
+                    }
+                    return prepared.states().length;
+                };
+            }));
+            CASES.add(new Case("nnue.refresh." + name, () -> {
+                Nnue nnue = new Nnue(network.get(), kernels);
+                short[] accumulator = new short[NnueNetwork.L1];
+                return prepared -> {
+                    for (BitBoards state : prepared.states()) {
+                        nnue.refresh(state, true, accumulator);
+                        nnue.refresh(state, false, accumulator);
+                        blackhole += accumulator[0];
+                    }
+                    return prepared.states().length;
+                };
+            }));
+            // Compare with make.tryMove for the cost of the update alone
+            CASES.add(new Case("nnue.tryMoveAndUpdate." + name, () -> {
+                Nnue nnue = new Nnue(network.get(), kernels);
+                return prepared -> {
+                    long operations = 0;
+                    for (int i = 0; i < prepared.states().length; i++) {
+                        nnue.accumulator(prepared.states()[i]);
+                        for (Move move : prepared.legalMoves()[i]) {
+                            blackhole += nnue.accumulator(prepared.states()[i].tryMove(move)).white[0];
+                        }
+                        operations += prepared.legalMoves()[i].length;
+                    }
+                    return operations;
+                };
+            }));
+        }
+        CASES.add(new Case("attack.safeSquare", prepared -> {
+            for (BitBoards state : prepared.states()) {
+                for (long square : BitBoards.SQUARE_TO_BITBOARD) {
+                    blackhole += state.safeSquare(state.whiteToMove, square) ? 1 : 0;
+                }
+            }
+            return prepared.states().length * 64L;
+        }));
+        CASES.add(new Case("attack.staticExchange", prepared -> {
+            long operations = 0;
+            Move[] captures = new Move[256];
+            for (BitBoards state : prepared.states()) {
+                int count = MoveGeneration.generateCaptures(state, captures, 0);
+                for (int i = 0; i < count; i++) {
+                    blackhole += StaticExchange.evaluate(state, captures[i]);
+                    ++operations;
+                }
+            }
+            return operations;
+        }));
+        // The flat table against the layout it replaced, one array per square
+        CASES.add(new Case("magic.lookup.flat", prepared -> {
+            for (BitBoards state : prepared.states()) {
+                for (int square = 0; square < 64; square++) {
+                    blackhole += MoveGeneration.getRookAttacks(square, state.allPieces) ^
+                            MoveGeneration.getBishopAttacks(square, state.allPieces);
+                }
+            }
+            return prepared.states().length * 64L;
+        }));
+        CASES.add(new Case("magic.lookup.nested", () -> {
+            long[][] nestedRookAttacks = new long[64][], nestedBishopAttacks = new long[64][];
+            for (int square = 0; square < 64; square++) {
+                nestedRookAttacks[square] = Arrays.copyOfRange(SliderAttacks.ATTACKS,
+                        SliderAttacks.ROOK_OFFSETS[square],
+                        SliderAttacks.ROOK_OFFSETS[square] + (1 << BitBoards.ROOK_RELEVANT_BITS[square]));
+                nestedBishopAttacks[square] = Arrays.copyOfRange(SliderAttacks.ATTACKS,
+                        SliderAttacks.BISHOP_OFFSETS[square],
+                        SliderAttacks.BISHOP_OFFSETS[square] + (1 << BitBoards.BISHOP_RELEVANT_BITS[square]));
+            }
+            return prepared -> {
+                for (BitBoards state : prepared.states()) {
+                    for (int square = 0; square < 64; square++) {
+                        long rookBlockers = state.allPieces & BitBoards.ROOK_BLOCKER_MASK[square];
+                        long bishopBlockers = state.allPieces & BitBoards.BISHOP_BLOCKER_MASK[square];
+                        int rookIndex = (int) ((rookBlockers * BitBoards.ROOK_MAGICS[square]) >>>
+                                (64 - BitBoards.ROOK_RELEVANT_BITS[square]));
+                        int bishopIndex = (int) ((bishopBlockers * BitBoards.BISHOP_MAGICS[square]) >>>
+                                (64 - BitBoards.BISHOP_RELEVANT_BITS[square]));
+                        blackhole += nestedRookAttacks[square][rookIndex] ^ nestedBishopAttacks[square][bishopIndex];
+                    }
+                }
+                return prepared.states().length * 64L;
+            };
+        }));
+        // Initializing the table once, which doesn't depend on the positions
+        CASES.add(new Case("magic.init.compute", prepared -> {
+            blackhole += SliderAttacks.compute().length;
+            return 1;
+        }));
+        CASES.add(new Case("magic.init.load", () -> {
+            ByteBuffer sliderAttacksFile = sliderAttacksFile();
+            return prepared -> {
+                try {
+                    blackhole += SliderAttacks.load(sliderAttacksFile).length;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return 1;
+            };
+        }));
+        // One table lookup per position, computed before the first iteration
+        CASES.add(new Case("bitbase.probe", () -> {
+            Map<String, Bitbase> kpk = new HashMap<>();
+            BitbaseGenerator.generate(BitbaseGenerator.withDependencies(List.of("KPvK")), kpk);
+            Bitbases bitbases = new Bitbases(kpk);
+            return prepared -> {
+                for (BitBoards state : prepared.kingAndPawnStates()) {
+                    blackhole += bitbases.probe(state);
+                }
+                return prepared.kingAndPawnStates().length;
+            };
+        }));
+        CASES.add(new Case("perft.depth3.nodes", prepared -> {
+            long nodes = 0;
+            for (BitBoards state : prepared.states()) {
+                nodes += perft(state, 3);
+            }
+            blackhole += nodes;
+            return nodes;
+        }));
+        CASES.add(new Case("search.depth3.nodes", prepared -> {
+            NegaMax engine = new NegaMax(EngineConfig.parse("book=false"));
+            long nodes = 0;
+            for (String FEN : prepared.FENs()) {
+                SearchResult result = engine.search(FEN, SearchLimits.depth(3));
+                blackhole += result.score();
+                nodes += result.nodes();
+            }
+            return nodes;
+        }));
+    }
+
+    /**
+     * @return a supplier that runs the setup the first time it is called, for fixtures that
+     * several benchmarks share
+     */
+    private static <T> Supplier<T> lazily(Supplier<T> setup) {
+        return new Supplier<>() {
+            private T value;
+
+            @Override
+            public T get() {
+                if (value == null) {
+                    value = setup.get();
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Keeps the kings and the first pawn in FEN order, so the positions of every group reach
+     * different parts of the KPvK table
+     *
+     * @return the position without castling rights or en passant square
+     */
+    private static String kingAndPawn(String FEN) {
+        String[] parts = FEN.split(" ");
+        StringBuilder board = new StringBuilder();
+        boolean pawnKept = false;
+        int empty = 0;
+        for (char c : parts[0].toCharArray()) {
+            if (Character.isDigit(c)) {
+                empty += c - '0';
+            } else if (c == '/' || c == 'K' || c == 'k' || (!pawnKept && (c == 'P' || c == 'p'))) {
+                if (empty > 0) {
+                    board.append(empty);
+                    empty = 0;
+                }
+                pawnKept |= c == 'P' || c == 'p';
+                board.append(c);
+            } else {
+                ++empty;
+            }
+        }
+        if (empty > 0) {
+            board.append(empty);
+        }
+        return board + " " + parts[1] + " - - 0 1";
+    }
+
+    /**
+     * @return the table file in memory
+     */
+    private static ByteBuffer sliderAttacksFile() {
+        try {
+            Path file = Files.createTempFile("slider_attacks", ".bin");
+            try {
+                SliderAttacks.write(SliderAttacks.ATTACKS, file);
+                return ByteBuffer.wrap(Files.readAllBytes(file));
+            } finally {
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static long perft(BitBoards state, int depth) {
+        Move[] legalMoves = MoveGeneration.generateLegalMoves(state);
+        if (depth == 1) {
+            return legalMoves.length;
+        }
+        long nodes = 0;
+        for (Move move : legalMoves) {
+            nodes += perft(state.tryMove(move), depth - 1);
+        }
+        return nodes;
+    }
+
+    public static void main(String[] args) {
+        Pattern filter = Pattern.compile(".*");
+        int warmupIterations = 3, measurementIterations = 5;
+        long iterationMillis = 1000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--warmup" -> warmupIterations = Integer.parseInt(args[++i]);
+                case "--iterations" -> measurementIterations = Integer.parseInt(args[++i]);
+                case "--time" -> iterationMillis = Long.parseLong(args[++i]);
+                case "--nodes" -> {
+                    nodeCounts(Integer.parseInt(args[++i]));
+                    return;
+                }
+                default -> filter = Pattern.compile(args[i]);
+            }
+        }
+
+        System.out.printf("%-30s %-12s %5s %15s    %-12s %s%n", "Benchmark", "positions", "Cnt", "Score", "Error",
+                "Units");
+        for (Case benchmark : CASES) {
+            ToLongFunction<Prepared> operation = null;
+            for (Map.Entry<String, String[]> positions : POSITIONS.entrySet()) {
+                if (!filter.matcher(benchmark.name() + ":" + positions.getKey()).find()) {
+                    continue;
+                }
+                if (operation == null) {
+                    operation = benchmark.setup().get();
+                }
+                Prepared prepared = Prepared.of(positions.getValue());
+                for (int i = 0; i < warmupIterations; i++) {
+                    iteration(operation, prepared, iterationMillis);
+                }
+                double[] scores = new double[measurementIterations];
+                for (int i = 0; i < measurementIterations; i++) {
+                    scores[i] = iteration(operation, prepared, iterationMillis);
+                }
+                report(benchmark.name(), positions.getKey(), scores);
+            }
+        }
+    }
+
+    /**
+     * Prints the nodes of fixed-depth searches of all positions, with all pruning, without each
+     * pruning technique, and without any
+     *
+     * @param depth depth of every search
+     */
+    private static void nodeCounts(int depth) {
+        String[][] configs = {
+                {"all pruning", ""},
+                {"no futility", "futility=false"},
+                {"no reverse futility", "reverseFutility=false"},
+                {"no razoring", "razoring=false"},
+                {"no late move pruning", "lmp=false"},
+                {"no pruning", "futility=false,reverseFutility=false,razoring=false,lmp=false"},
+        };
+        System.out.printf("%-30s %12s %12s%n", "Configuration", "nodes", "qnodes");
+        for (String[] config : configs) {
+            NegaMax engine = new NegaMax(EngineConfig.parse("book=false," + config[1]));
+            SearchStats total = new SearchStats();
+            for (String[] FENs : POSITIONS.values()) {
+                for (String FEN : FENs) {
+                    total.merge(engine.search(FEN, SearchLimits.depth(depth)).stats());
+                }
+            }
+            System.out.printf("%-30s %12d %12d%n", config[0], total.nodes, total.qnodes);
+        }
+    }
+
+    /**
+     * @return operations per second during the iteration
+     */
+    private static double iteration(ToLongFunction<Prepared> operation, Prepared prepared, long iterationMillis) {
+        long operations = 0;
+        long start = System.nanoTime(), end = start + iterationMillis * 1_000_000, now;
+        do {
+            operations += operation.applyAsLong(prepared);
+            now = System.nanoTime();
+        } while (now < end);
+        return operations * 1e9 / (now - start);
+    }
+
+    private static void report(String name, String positions, double[] scores) {
+        double mean = 0;
+        for (double score : scores) {
+            mean += score;
+        }
+        mean /= scores.length;
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double error = scores.length > 1 ? Math.sqrt(variance / (scores.length - 1)) : 0;
+        System.out.printf("%-30s %-12s %5d %15.1f +- %-12.1f ops/s%n", name, positions, scores.length, mean, error);
+    }
+}
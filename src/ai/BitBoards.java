@@ -2,14 +2,20 @@ package ai;
 
 class BitBoards {
     static final int
-            PAWN_VAL = 1,
-            ROOK_VAL = 5,
-            KNIGHT_VAL = 3,
-            BISHOP_VAL = 3,
-            QUEEN_VAL = 9,
-            KING_VAL = 100,
+            PAWN_VAL = 100,
+            ROOK_VAL = 500,
+            KNIGHT_VAL = 320,
+            BISHOP_VAL = 330,
+            QUEEN_VAL = 900,
+            KING_VAL = 20000,
             CHECKMATE_VAL = Integer.MIN_VALUE / 2;
 
+    // Largest amount the terms left after each stage of evaluateBoard are expected to change the
+    // score, so a partial score further than that outside the window is returned as is
+    static final int
+            LAZY_MARGIN_MATERIAL = 600,
+            LAZY_MARGIN_PAWNS = 400;
+
     static final int
             A1 = 0,
             H1 = 7,
@@ -206,106 +212,6 @@ class BitBoards {
             5, 5, 5, 5, 5, 5, 5, 5,
             6, 5, 5, 5, 5, 5, 5, 6};
 
-    static final long[][] ROOK_ATTACKS = new long[64][];
-    static final long[][] BISHOP_ATTACKS = new long[64][];
-
-    static {
-        for (int i = 0; i < 64; i++) {
-            int positions = 1 << ROOK_RELEVANT_BITS[i];
-            ROOK_ATTACKS[i] = new long[positions];
-
-            for (int position = 0; position < positions; position++) {
-                long blockers = occupancyVariation(position, ROOK_RELEVANT_BITS[i],
-                        ROOK_BLOCKER_MASK[i]);
-                int index = (int) ((blockers * ROOK_MAGICS[i]) >>> (64 - ROOK_RELEVANT_BITS[i]));
-                ROOK_ATTACKS[i][index] = slidingPieceMoveHelper(i, blockers, true);
-            }
-        }
-
-        for (int i = 0; i < 64; i++) {
-            int positions = 1 << BISHOP_RELEVANT_BITS[i];
-            BISHOP_ATTACKS[i] = new long[positions];
-
-            for (int position = 0; position < positions; position++) {
-                long blockers = occupancyVariation(position, BISHOP_RELEVANT_BITS[i],
-                        BISHOP_BLOCKER_MASK[i]);
-                int index = (int) ((blockers * BISHOP_MAGICS[i]) >>> (64 - BISHOP_RELEVANT_BITS[i]));
-                BISHOP_ATTACKS[i][index] = slidingPieceMoveHelper(i, blockers, false);
-            }
-        }
-    }
-
-    private static long occupancyVariation(int index, int bits, long mask) {
-        long result = 0L;
-        for (int i = 0; i < bits; i++) {
-            int occupancyIndex = Long.numberOfTrailingZeros(mask);
-            mask ^= SQUARE_TO_BITBOARD[occupancyIndex];
-
-            if ((1 << i & index) != 0) {
-                result |= 1L << occupancyIndex;
-            }
-        }
-
-        return result;
-    }
-
-    private static long slidingPieceMoveHelper(int index, long blockers, boolean rook) {
-        long attack = 0L;
-
-        if (rook) {
-            for (int up = index + 8; up <= H8; up += 8) {
-                attack |= SQUARE_TO_BITBOARD[up];
-                if ((blockers & SQUARE_TO_BITBOARD[up]) != 0) {
-                    break;
-                }
-            }
-            for (int down = index - 8; down >= A1; down -= 8) {
-                attack |= SQUARE_TO_BITBOARD[down];
-                if ((blockers & SQUARE_TO_BITBOARD[down]) != 0) {
-                    break;
-                }
-            }
-            for (int left = index - 1; left >= A1 && left % 8 != 7; left--) {
-                attack |= SQUARE_TO_BITBOARD[left];
-                if ((blockers & SQUARE_TO_BITBOARD[left]) != 0) {
-                    break;
-                }
-            }
-            for (int right = index + 1; right <= H8 && right % 8 != 0; right++) {
-                attack |= SQUARE_TO_BITBOARD[right];
-                if ((blockers & SQUARE_TO_BITBOARD[right]) != 0) {
-                    break;
-                }
-            }
-        } else {
-            for (int upLeft = index + 7; upLeft <= H8 && upLeft % 8 != 7; upLeft += 7) {
-                attack |= SQUARE_TO_BITBOARD[upLeft];
-                if ((blockers & SQUARE_TO_BITBOARD[upLeft]) != 0) {
-                    break;
-                }
-            }
-            for (int upRight = index + 9; upRight <= H8 && upRight % 8 != 0; upRight += 9) {
-                attack |= SQUARE_TO_BITBOARD[upRight];
-                if ((blockers & SQUARE_TO_BITBOARD[upRight]) != 0) {
-                    break;
-                }
-            }
-            for (int downLeft = index - 9; downLeft >= A1 && downLeft % 8 != 7; downLeft -= 9) {
-                attack |= SQUARE_TO_BITBOARD[downLeft];
-                if ((blockers & SQUARE_TO_BITBOARD[downLeft]) != 0) {
-                    break;
-                }
-            }
-            for (int downRight = index - 7; downRight >= A1 && downRight % 8 != 0; downRight -= 7) {
-                attack |= SQUARE_TO_BITBOARD[downRight];
-                if ((blockers & SQUARE_TO_BITBOARD[downRight]) != 0) {
-                    break;
-                }
-            }
-        }
-        return attack;
-    }
-
     long whitePawns, whiteKnights, whiteBishops, whiteRooks, whiteQueens, whiteKing;
     long blackPawns, blackKnights, blackBishops, blackRooks, blackQueens, blackKing;
     long whitePieces, blackPieces, allPieces;
@@ -314,10 +220,19 @@ class BitBoards {
     int halfMoveClock;
     int moveCounter;
     int castleRights;
+    // Sums of Evaluation.MG, Evaluation.EG, and Evaluation.PHASE of every piece, kept up to date by tryMove
+    int mgScore, egScore, phase;
+    // Zobrist key of the position, the same as Zobrist.key, and of only the pawns, for the pawn hash table
+    long key, pawnKey;
+    // Squares attacked by each side, computed at most once per state and never copied to children
+    private long whiteAttacks, blackAttacks;
+    private boolean whiteAttacksKnown, blackAttacksKnown;
+    // Output of the first layer of the network, computed at most once per state, see Nnue
+    Nnue.Accumulator accumulator;
 
     enum GameStatus {
         // Unsure if these are all the game statuses
-        NORMAL, CHECK, CHECKMATE, STALEMATE, FIFTY_MOVE_RULE, THREEFOLD_REPETITION,
+        NORMAL, CHECKMATE, STALEMATE, FIFTY_MOVE_RULE, THREEFOLD_REPETITION,
         INSUFFICIENT_MATERIAL
     }
 
@@ -433,6 +348,17 @@ class BitBoards {
         this.halfMoveClock = Integer.parseInt(halfMoveClock);
         this.moveCounter = Integer.parseInt(moveCounter);
         this.parent = null;
+        BitBoards empty = new BitBoards();
+        updatePieces(empty);
+        updateKey(empty);
+    }
+
+    /**
+     * Empty board, only used as the previous state of a parsed position
+     */
+    private BitBoards() {
+        this.enPassantIndex = -1;
+        this.parent = null;
     }
 
     private BitBoards(BitBoards state) {
@@ -456,10 +382,22 @@ class BitBoards {
         this.halfMoveClock = state.halfMoveClock;
         this.moveCounter = state.moveCounter;
         this.castleRights = state.castleRights;
+        this.mgScore = state.mgScore;
+        this.egScore = state.egScore;
+        this.phase = state.phase;
+        this.key = state.key;
+        this.pawnKey = state.pawnKey;
         this.gameStatus = state.gameStatus;
         this.parent = state;
     }
 
+    /**
+     * @return state the move that led to this state was made in, or null for a parsed position
+     */
+    BitBoards parent() {
+        return parent;
+    }
+
     /**
      * Called when validating a move or performing a move
      *
@@ -480,7 +418,15 @@ class BitBoards {
                     throw new IllegalStateException("Unexpected value in make move: " + move.moveType());
         };
         newState.whiteToMove = !this.whiteToMove;
-        ++newState.moveCounter;
+        // Captures and pawn moves reset the fifty-move rule
+        boolean capture = (allPieces & SQUARE_TO_BITBOARD[move.end()]) != 0 ||
+                move.moveType() == Move.MoveType.EN_PASSANT;
+        newState.halfMoveClock = capture || move.pieceType() == Move.PieceType.PAWN ? 0 : halfMoveClock + 1;
+        if (!this.whiteToMove) {
+            ++newState.moveCounter;
+        }
+        newState.updatePieces(this);
+        newState.updateKey(this);
 
         if (checkOverlap(newState)) {
             System.err.printf("""
@@ -493,6 +439,73 @@ class BitBoards {
         return newState;
     }
 
+    /**
+     * Updates the incremental terms for every piece that differs from the previous state, so
+     * the tryMove paths for each move type don't have to
+     *
+     * @param previous state before the move
+     */
+    private void updatePieces(BitBoards previous) {
+        updatePiece(Evaluation.WHITE_PAWN, previous.whitePawns, whitePawns);
+        updatePiece(Evaluation.WHITE_KNIGHT, previous.whiteKnights, whiteKnights);
+        updatePiece(Evaluation.WHITE_BISHOP, previous.whiteBishops, whiteBishops);
+        updatePiece(Evaluation.WHITE_ROOK, previous.whiteRooks, whiteRooks);
+        updatePiece(Evaluation.WHITE_QUEEN, previous.whiteQueens, whiteQueens);
+        updatePiece(Evaluation.WHITE_KING, previous.whiteKing, whiteKing);
+        updatePiece(Evaluation.BLACK_PAWN, previous.blackPawns, blackPawns);
+        updatePiece(Evaluation.BLACK_KNIGHT, previous.blackKnights, blackKnights);
+        updatePiece(Evaluation.BLACK_BISHOP, previous.blackBishops, blackBishops);
+        updatePiece(Evaluation.BLACK_ROOK, previous.blackRooks, blackRooks);
+        updatePiece(Evaluation.BLACK_QUEEN, previous.blackQueens, blackQueens);
+        updatePiece(Evaluation.BLACK_KING, previous.blackKing, blackKing);
+    }
+
+    private void updatePiece(int piece, long before, long after) {
+        if (before == after) {
+            return;
+        }
+        long pieceKeys = 0;
+        for (long removed = before & ~after; removed != 0; removed &= removed - 1) {
+            int square = Long.numberOfTrailingZeros(removed);
+            mgScore -= Evaluation.MG[piece][square];
+            egScore -= Evaluation.EG[piece][square];
+            phase -= Evaluation.PHASE[piece];
+            pieceKeys ^= Zobrist.PIECE_SQUARE[piece * 64 + square];
+        }
+        for (long added = after & ~before; added != 0; added &= added - 1) {
+            int square = Long.numberOfTrailingZeros(added);
+            mgScore += Evaluation.MG[piece][square];
+            egScore += Evaluation.EG[piece][square];
+            phase += Evaluation.PHASE[piece];
+            pieceKeys ^= Zobrist.PIECE_SQUARE[piece * 64 + square];
+        }
+        key ^= pieceKeys;
+        if (piece == Evaluation.WHITE_PAWN || piece == Evaluation.BLACK_PAWN) {
+            pawnKey ^= pieceKeys;
+        }
+    }
+
+    /**
+     * Updates the key for the castling rights, en passant file, and side to move, after the
+     * pieces were updated by updatePieces
+     *
+     * @param previous state before the move
+     */
+    private void updateKey(BitBoards previous) {
+        for (int changed = castleRights ^ previous.castleRights; changed != 0; changed &= changed - 1) {
+            key ^= Zobrist.CASTLING[Integer.numberOfTrailingZeros(changed)];
+        }
+        if (Zobrist.enPassantCapturePossible(previous)) {
+            key ^= Zobrist.EN_PASSANT_FILE[previous.enPassantIndex & 7];
+        }
+        if (Zobrist.enPassantCapturePossible(this)) {
+            key ^= Zobrist.EN_PASSANT_FILE[enPassantIndex & 7];
+        }
+        if (whiteToMove != previous.whiteToMove) {
+            key ^= Zobrist.WHITE_TO_MOVE;
+        }
+    }
+
     /**
      * @param move move to make
      * @return new state
@@ -506,7 +519,8 @@ class BitBoards {
             switch (move.pieceType()) {
                 case PAWN -> newState.whitePawns ^= moveBitboard;
                 case ROOK -> {
-                    newState.castleRights &= move.start() == H1 ? 0b1110 : 0b1101;
+                    newState.castleRights &= move.start() == H1 ? 0b1110 :
+                            move.start() == A1 ? 0b1101 : 0b1111;
                     newState.whiteRooks ^= moveBitboard;
                 }
                 case KNIGHT -> newState.whiteKnights ^= moveBitboard;
@@ -521,10 +535,10 @@ class BitBoards {
             }
             newState.whitePieces ^= moveBitboard;
             if ((newState.blackPieces & endBitboard) != 0) {
-                newState.halfMoveClock = 0;
                 newState.blackPawns &= ~endBitboard;
                 if ((newState.blackRooks & endBitboard) != 0) {
-                    newState.castleRights &= move.end() == H8 ? 0b1011 : 0b0111;
+                    newState.castleRights &= move.end() == H8 ? 0b1011 :
+                            move.end() == A8 ? 0b0111 : 0b1111;
                     newState.blackRooks &= ~endBitboard;
                 }
                 newState.blackKnights &= ~endBitboard;
@@ -537,7 +551,8 @@ class BitBoards {
             switch (move.pieceType()) {
                 case PAWN -> newState.blackPawns ^= moveBitboard;
                 case ROOK -> {
-                    newState.castleRights &= move.start() == H8 ? 0b1011 : 0b0111;
+                    newState.castleRights &= move.start() == H8 ? 0b1011 :
+                            move.start() == A8 ? 0b0111 : 0b1111;
                     newState.blackRooks ^= moveBitboard;
                 }
                 case KNIGHT -> newState.blackKnights ^= moveBitboard;
@@ -552,10 +567,10 @@ class BitBoards {
             }
             newState.blackPieces ^= moveBitboard;
             if ((newState.whitePieces & endBitboard) != 0) {
-                newState.halfMoveClock = 0;
                 newState.whitePawns &= ~endBitboard;
                 if ((newState.whiteRooks & endBitboard) != 0) {
-                    newState.castleRights &= move.end() == H1 ? 0b1110 : 0b1101;
+                    newState.castleRights &= move.end() == H1 ? 0b1110 :
+                            move.end() == A1 ? 0b1101 : 0b1111;
                     newState.whiteRooks &= ~endBitboard;
                 }
                 newState.whiteKnights &= ~endBitboard;
@@ -568,7 +583,6 @@ class BitBoards {
         newState.allPieces &= ~startBitboard;
         newState.allPieces |= endBitboard;
         newState.enPassantIndex = -1;
-        ++newState.halfMoveClock;
 
         return newState;
     }
@@ -623,7 +637,6 @@ class BitBoards {
             newState.allPieces ^= SQUARE_TO_BITBOARD[end + 8];
         }
         newState.enPassantIndex = -1;
-        newState.halfMoveClock = 0;
 
         return newState;
     }
@@ -715,7 +728,6 @@ class BitBoards {
             newState.enPassantIndex = move.end() + 8;
         }
         newState.allPieces ^= moveBitboard;
-        newState.halfMoveClock = 0;
         if ((SQUARE_TO_BITBOARD[newState.enPassantIndex] & RANK_3 | SQUARE_TO_BITBOARD[newState.enPassantIndex] & RANK_6) == 0) {
             throw new IllegalStateException("Unexpected en passant index: " + newState.enPassantIndex);
         }
@@ -744,11 +756,10 @@ class BitBoards {
                     throw new IllegalStateException("Unexpected black pawn at promotion square");
                 }
 
-                newState.halfMoveClock = 0;
                 if (move.end() == H8) {
-                    newState.castleRights &= 0b0111;
-                } else if (move.end() == A8) {
                     newState.castleRights &= 0b1011;
+                } else if (move.end() == A8) {
+                    newState.castleRights &= 0b0111;
                 }
                 newState.blackRooks &= ~endBitboard;
                 newState.blackKnights &= ~endBitboard;
@@ -773,11 +784,10 @@ class BitBoards {
                     throw new IllegalStateException("Unexpected white pawn at promotion square");
                 }
 
-                newState.halfMoveClock = 0;
                 if (move.end() == H1) {
-                    newState.castleRights &= 0b1101;
-                } else if (move.end() == A1) {
                     newState.castleRights &= 0b1110;
+                } else if (move.end() == A1) {
+                    newState.castleRights &= 0b1101;
                 }
                 newState.whiteRooks &= ~endBitboard;
                 newState.whiteKnights &= ~endBitboard;
@@ -800,32 +810,51 @@ class BitBoards {
      * @param stateLegalMoves legal moves for the new state
      */
     private void updateGameStatus(Move[] stateLegalMoves) {
-        boolean inCheck = !safeSquare(whiteToMove, whiteToMove ?
-                whiteKing : blackKing);
-        boolean hasLegalMove = stateLegalMoves.length > 0;
-        if (inCheck) {
-            gameStatus = hasLegalMove ? GameStatus.CHECK : GameStatus.CHECKMATE;
+        if (stateLegalMoves.length > 0) {
+            gameStatus = GameStatus.NORMAL;
         } else {
-            gameStatus = hasLegalMove ? GameStatus.NORMAL : GameStatus.STALEMATE;
+            // Check only matters to tell checkmate from stalemate, so it isn't looked for otherwise
+            gameStatus = inCheck() ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
         }
 
         if (halfMoveClock >= 100) {
             gameStatus = GameStatus.FIFTY_MOVE_RULE;
         }
+        if (insufficientMaterial()) {
+            gameStatus = GameStatus.INSUFFICIENT_MATERIAL;
+        }
+    }
+
+    /**
+     * @return if the side to move is in check
+     */
+    boolean inCheck() {
+        return !safeSquare(whiteToMove, Side.toMove(this).king(this));
+    }
+
+    /**
+     * Draws that don't need the legal moves, so the search can find them without generating any
+     *
+     * @return if the game is drawn by the fifty-move rule or insufficient material
+     */
+    boolean drawnByRule() {
+        return halfMoveClock >= 100 || insufficientMaterial();
+    }
+
+    private boolean insufficientMaterial() {
         if (Long.bitCount(whitePawns | blackPawns | whiteRooks | blackRooks | whiteQueens | blackQueens) == 0) {
             int knightCount = Long.bitCount(whiteKnights | blackKnights);
             int bishopCount = Long.bitCount(whiteBishops | blackBishops);
-            if (knightCount <= 2 || bishopCount <= 1) {
-                gameStatus = GameStatus.INSUFFICIENT_MATERIAL;
-            }
+            return knightCount <= 2 || bishopCount <= 1;
         }
+        return false;
     }
 
     boolean gameOver() {
         return switch (gameStatus) {
             case CHECKMATE, STALEMATE, FIFTY_MOVE_RULE, THREEFOLD_REPETITION,
                  INSUFFICIENT_MATERIAL -> true;
-            case NORMAL, CHECK -> false;
+            case NORMAL -> false;
         };
     }
 
@@ -833,127 +862,181 @@ class BitBoards {
      * Checks if the current color of the board is being attacked on the specified square
      *
      * @param color  color of the player to check
-     * @param square bitboard of the square to check
+     * @param square bitboard of the single square to check
      * @return if the index is safe
      */
     boolean safeSquare(boolean color, long square) {
-        long enemyPawns = color ? blackPawns : whitePawns;
-        long enemyRooks = color ? blackRooks : whiteRooks;
-        long enemyKnights = color ? blackKnights : whiteKnights;
-        long enemyBishops = color ? blackBishops : whiteBishops;
-        long enemyQueens = color ? blackQueens : whiteQueens;
-        long enemyKing = color ? blackKing : whiteKing;
-
-        // Pawn attacks
-        while (enemyPawns != 0) {
-            int enemyPawnIndex = Long.numberOfTrailingZeros(enemyPawns);
-            if (color) {
-                if ((BLACK_PAWN_POSSIBLE_CAPTURES[enemyPawnIndex] & square) != 0) {
-                    return false;
-                }
-            } else {
-                if ((WHITE_PAWN_POSSIBLE_CAPTURES[enemyPawnIndex] & square) != 0) {
-                    return false;
-                }
-            }
-            enemyPawns ^= SQUARE_TO_BITBOARD[enemyPawnIndex];
+        if (color ? blackAttacksKnown : whiteAttacksKnown) {
+            return (attacks(!color) & square) == 0;
         }
+        return (attackersTo(Long.numberOfTrailingZeros(square), allPieces) & (color ? blackPieces : whitePieces)) == 0;
+    }
 
-        // Rook attacks
-        while (enemyRooks != 0) {
-            int enemyRookIndex = Long.numberOfTrailingZeros(enemyRooks);
-            if ((MoveGeneration.getRookAttacks(enemyRookIndex, allPieces) & square) != 0) {
-                return false;
-            }
-            enemyRooks ^= SQUARE_TO_BITBOARD[enemyRookIndex];
-        }
+    /**
+     * Looks from the square outwards with every piece's attack pattern, since a piece attacks the
+     * square exactly when a piece of the same type on the square would attack it
+     *
+     * @param square    square to find the attackers of
+     * @param occupancy pieces that block sliders, which may leave out pieces that already captured
+     * @return bitboard of the pieces of both sides in the occupancy that attack the square
+     */
+    long attackersTo(int square, long occupancy) {
+        long bitBoard = SQUARE_TO_BITBOARD[square];
+        long attackers = AttackEvaluation.pawnAttacks(bitBoard, false) & whitePawns |
+                AttackEvaluation.pawnAttacks(bitBoard, true) & blackPawns |
+                KNIGHT_POSSIBLE_MOVES[square] & (whiteKnights | blackKnights) |
+                KING_POSSIBLE_MOVES[square] & (whiteKing | blackKing) |
+                MoveGeneration.getBishopAttacks(square, occupancy) & (whiteBishops | blackBishops | whiteQueens | blackQueens) |
+                MoveGeneration.getRookAttacks(square, occupancy) & (whiteRooks | blackRooks | whiteQueens | blackQueens);
+        return attackers & occupancy;
+    }
 
-        // Knight attacks
-        while (enemyKnights != 0) {
-            int enemyKnightIndex = Long.numberOfTrailingZeros(enemyKnights);
-            if ((KNIGHT_POSSIBLE_MOVES[enemyKnightIndex] & square) != 0) {
-                return false;
-            }
-            enemyKnights ^= SQUARE_TO_BITBOARD[enemyKnightIndex];
+    /**
+     * @param white side whose attacks to get
+     * @return every square attacked by a piece of the side, computed once per state
+     */
+    long attacks(boolean white) {
+        if (white ? !whiteAttacksKnown : !blackAttacksKnown) {
+            cacheAttacks(white, computeAttacks(white));
         }
+        return white ? whiteAttacks : blackAttacks;
+    }
 
-        // Bishop attacks
-        while (enemyBishops != 0) {
-            int enemyBishopIndex = Long.numberOfTrailingZeros(enemyBishops);
-            if ((MoveGeneration.getBishopAttacks(enemyBishopIndex, allPieces) & square) != 0) {
-                return false;
-            }
-            enemyBishops ^= SQUARE_TO_BITBOARD[enemyBishopIndex];
+    /**
+     * @param white   side of the attacks
+     * @param attacks every square attacked by a piece of the side
+     */
+    void cacheAttacks(boolean white, long attacks) {
+        if (white) {
+            whiteAttacks = attacks;
+            whiteAttacksKnown = true;
+        } else {
+            blackAttacks = attacks;
+            blackAttacksKnown = true;
         }
+    }
 
-        // Queen attacks
-        while (enemyQueens != 0) {
-            int enemyQueenIndex = Long.numberOfTrailingZeros(enemyQueens);
-            if (((MoveGeneration.getRookAttacks(enemyQueenIndex, allPieces) | MoveGeneration.getBishopAttacks(enemyQueenIndex, allPieces)) & square) != 0) {
-                return false;
-            }
-            enemyQueens ^= SQUARE_TO_BITBOARD[enemyQueenIndex];
+    private long computeAttacks(boolean white) {
+        long attacks = AttackEvaluation.pawnAttacks(white ? whitePawns : blackPawns, white) |
+                KING_POSSIBLE_MOVES[Long.numberOfTrailingZeros(white ? whiteKing : blackKing)];
+        for (long knights = white ? whiteKnights : blackKnights; knights != 0; knights &= knights - 1) {
+            attacks |= KNIGHT_POSSIBLE_MOVES[Long.numberOfTrailingZeros(knights)];
         }
-
-        // King attacks
-        int enemyKingIndex = Long.numberOfTrailingZeros(enemyKing);
-        if ((KING_POSSIBLE_MOVES[enemyKingIndex] & square) != 0) {
-            return false;
+        for (long rooks = (white ? whiteRooks | whiteQueens : blackRooks | blackQueens); rooks != 0; rooks &= rooks - 1) {
+            attacks |= MoveGeneration.getRookAttacks(Long.numberOfTrailingZeros(rooks), allPieces);
         }
-        enemyKing ^= SQUARE_TO_BITBOARD[enemyKingIndex];
-
-        return true;
+        for (long bishops = (white ? whiteBishops | whiteQueens : blackBishops | blackQueens); bishops != 0;
+             bishops &= bishops - 1) {
+            attacks |= MoveGeneration.getBishopAttacks(Long.numberOfTrailingZeros(bishops), allPieces);
+        }
+        return attacks;
     }
 
     /**
      * @return value of the board
      */
     int evaluateBoard(Move[] legalMoves) {
+        return evaluateBoard(legalMoves, null);
+    }
+
+    /**
+     * @param legalMoves legal moves of the state
+     * @param pawnTable  cache of pawn structure scores, or null to compute them
+     * @return value of the board
+     */
+    int evaluateBoard(Move[] legalMoves, PawnHashTable pawnTable) {
+        return evaluateBoard(legalMoves, pawnTable, null, Integer.MIN_VALUE + 1, Integer.MAX_VALUE - 1, null);
+    }
+
+    /**
+     * Lazy evaluation: terms are added from the cheapest to the most expensive, and the score is
+     * returned as soon as it is far enough outside the window that the remaining terms are
+     * unlikely to bring it back in
+     *
+     * @param legalMoves legal moves of the state
+     * @param pawnTable  cache of pawn structure scores, or null to compute them
+     * @param evalCache  cache of exact static scores, or null to always compute them
+     * @param alpha      minimum score the caller is interested in
+     * @param beta       maximum score the caller is interested in
+     * @param stats      receives the number of evaluations, early exits, and cache probes, or null
+     * @return value of the board, which is only exact inside the window
+     */
+    int evaluateBoard(Move[] legalMoves, PawnHashTable pawnTable, EvalCache evalCache, int alpha, int beta,
+                      SearchStats stats) {
         updateGameStatus(legalMoves);
         return switch (gameStatus) {
             // -Integer.MIN_VALUE == Integer.MIN_VALUE due to overflow
             case CHECKMATE -> CHECKMATE_VAL;
             case STALEMATE, FIFTY_MOVE_RULE, THREEFOLD_REPETITION, INSUFFICIENT_MATERIAL -> 0;
-            case NORMAL, CHECK -> materialScore();
+            case NORMAL -> staticEvaluation(pawnTable, evalCache, alpha, beta, stats);
         };
     }
 
+    /**
+     * Evaluation of a position that is known not to be over, e.g. a leaf of the search, which
+     * skips the legal move generation and game status of {@link #evaluateBoard}
+     *
+     * @param pawnTable cache of pawn structure scores, or null to compute them
+     * @param evalCache cache of exact static scores, or null to always compute them
+     * @param alpha     minimum score the caller is interested in
+     * @param beta      maximum score the caller is interested in
+     * @param stats     receives the number of evaluations, early exits, and cache probes, or null
+     * @return static score from the perspective of the side to move, which is only exact inside the window
+     */
+    int staticEvaluation(PawnHashTable pawnTable, EvalCache evalCache, int alpha, int beta, SearchStats stats) {
+        int score = evalCache == null ? Integer.MIN_VALUE : evalCache.probe(key, stats);
+        return score != Integer.MIN_VALUE ? score : staticScore(pawnTable, evalCache, alpha, beta, stats);
+    }
+
     /**
      * Precondition: The game is not over
      *
-     * @return value of the board in white's perspective
+     * @param pawnTable cache of pawn structure scores, or null to compute them
+     * @return material, piece-square, pawn structure, and piece activity score in centipawns,
+     * tapered by the game phase, from the perspective of the side to move
      */
-    private int materialScore() {
-        int score = 0;
-        for (int i = 0; i < 64; i++) {
-            long positionBitboard = SQUARE_TO_BITBOARD[i];
-            if ((whitePawns & positionBitboard) != 0) {
-                score += PAWN_VAL;
-            } else if ((whiteRooks & positionBitboard) != 0) {
-                score += ROOK_VAL;
-            } else if ((whiteKnights & positionBitboard) != 0) {
-                score += KNIGHT_VAL;
-            } else if ((whiteBishops & positionBitboard) != 0) {
-                score += BISHOP_VAL;
-            } else if ((whiteQueens & positionBitboard) != 0) {
-                score += QUEEN_VAL;
-            } else if ((whiteKing & positionBitboard) != 0) {
-                score += KING_VAL;
-            } else if ((blackPawns & positionBitboard) != 0) {
-                score -= PAWN_VAL;
-            } else if ((blackRooks & positionBitboard) != 0) {
-                score -= ROOK_VAL;
-            } else if ((blackKnights & positionBitboard) != 0) {
-                score -= KNIGHT_VAL;
-            } else if ((blackBishops & positionBitboard) != 0) {
-                score -= BISHOP_VAL;
-            } else if ((blackQueens & positionBitboard) != 0) {
-                score -= QUEEN_VAL;
-            } else if ((blackKing & positionBitboard) != 0) {
-                score -= KING_VAL;
+    int staticScore(PawnHashTable pawnTable) {
+        return staticScore(pawnTable, null, Integer.MIN_VALUE + 1, Integer.MAX_VALUE - 1, null);
+    }
+
+    private int staticScore(PawnHashTable pawnTable, EvalCache evalCache, int alpha, int beta, SearchStats stats) {
+        if (stats != null) {
+            ++stats.evaluations;
+        }
+        // Material and piece-square tables, which are kept up to date by tryMove
+        int mg = mgScore, eg = egScore;
+        int score = sideToMoveScore(mg, eg);
+        if (score + LAZY_MARGIN_MATERIAL <= alpha || score - LAZY_MARGIN_MATERIAL >= beta) {
+            if (stats != null) {
+                ++stats.lazyMaterialExits;
+            }
+            return score;
+        }
+
+        // Pawn structure, which is almost always in the pawn hash table
+        long pawns = pawnTable == null ? PawnStructure.evaluate(whitePawns, blackPawns) : pawnTable.probe(this);
+        mg += PawnStructure.mg(pawns) + PawnStructure.kingShield(this);
+        eg += PawnStructure.eg(pawns);
+        score = sideToMoveScore(mg, eg);
+        if (score + LAZY_MARGIN_PAWNS <= alpha || score - LAZY_MARGIN_PAWNS >= beta) {
+            if (stats != null) {
+                ++stats.lazyPawnExits;
             }
+            return score;
         }
 
+        // Mobility, king safety, and hanging pieces, which need the attacks of every piece
+        long activity = AttackEvaluation.evaluate(this);
+        score = sideToMoveScore(mg + PawnStructure.mg(activity), eg + PawnStructure.eg(activity));
+        // Only the full score is cached, since a lazy one depends on the window
+        if (evalCache != null) {
+            evalCache.store(key, score);
+        }
+        return score;
+    }
+
+    private int sideToMoveScore(int mg, int eg) {
+        int score = Evaluation.taper(mg, eg, phase);
         return whiteToMove ? score : -score;
     }
 
@@ -1016,6 +1099,75 @@ class BitBoards {
         return false;
     }
 
+    /**
+     * @return string encoding the state in Forsyth–Edwards Notation
+     */
+    String toFEN() {
+        StringBuilder fen = new StringBuilder();
+        for (int i = 7; i >= 0; --i) {
+            int emptyLength = 0;
+            for (int j = 0; j < 8; ++j) {
+                char piece = pieceCharacter(1L << (8 * i + j));
+                if (piece == '.') {
+                    ++emptyLength;
+                    continue;
+                }
+                if (emptyLength > 0) {
+                    fen.append(emptyLength);
+                    emptyLength = 0;
+                }
+                fen.append(piece);
+            }
+            if (emptyLength > 0) {
+                fen.append(emptyLength);
+            }
+            if (i > 0) {
+                fen.append('/');
+            }
+        }
+
+        fen.append(whiteToMove ? " w " : " b ");
+        String castling = ((castleRights & 0b1) != 0 ? "K" : "") + ((castleRights & 0b10) != 0 ? "Q" : "") +
+                ((castleRights & 0b100) != 0 ? "k" : "") + ((castleRights & 0b1000) != 0 ? "q" : "");
+        fen.append(castling.isEmpty() ? "-" : castling);
+        fen.append(' ').append(enPassantIndex == -1 ? "-" : Move.indexToNotation(enPassantIndex));
+        fen.append(' ').append(halfMoveClock).append(' ').append(moveCounter);
+        return fen.toString();
+    }
+
+    /**
+     * @param position bitboard of the square
+     * @return FEN character of the piece on the square, or '.' if it is empty
+     */
+    private char pieceCharacter(long position) {
+        if ((whitePawns & position) != 0) {
+            return 'P';
+        } else if ((whiteKnights & position) != 0) {
+            return 'N';
+        } else if ((whiteBishops & position) != 0) {
+            return 'B';
+        } else if ((whiteRooks & position) != 0) {
+            return 'R';
+        } else if ((whiteQueens & position) != 0) {
+            return 'Q';
+        } else if ((whiteKing & position) != 0) {
+            return 'K';
+        } else if ((blackPawns & position) != 0) {
+            return 'p';
+        } else if ((blackKnights & position) != 0) {
+            return 'n';
+        } else if ((blackBishops & position) != 0) {
+            return 'b';
+        } else if ((blackRooks & position) != 0) {
+            return 'r';
+        } else if ((blackQueens & position) != 0) {
+            return 'q';
+        } else if ((blackKing & position) != 0) {
+            return 'k';
+        }
+        return '.';
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -1023,34 +1175,7 @@ class BitBoards {
 
         for (int i = 7; i >= 0; --i) {
             for (int j = 0; j < 8; ++j) {
-                long position = 1L << (8 * i + j);
-                if ((whitePawns & position) != 0) {
-                    sb.append('P');
-                } else if ((whiteKnights & position) != 0) {
-                    sb.append('N');
-                } else if ((whiteBishops & position) != 0) {
-                    sb.append('B');
-                } else if ((whiteRooks & position) != 0) {
-                    sb.append('R');
-                } else if ((whiteQueens & position) != 0) {
-                    sb.append('Q');
-                } else if ((whiteKing & position) != 0) {
-                    sb.append('K');
-                } else if ((blackPawns & position) != 0) {
-                    sb.append('p');
-                } else if ((blackKnights & position) != 0) {
-                    sb.append('n');
-                } else if ((blackBishops & position) != 0) {
-                    sb.append('b');
-                } else if ((blackRooks & position) != 0) {
-                    sb.append('r');
-                } else if ((blackQueens & position) != 0) {
-                    sb.append('q');
-                } else if ((blackKing & position) != 0) {
-                    sb.append('k');
-                } else {
-                    sb.append('.');
-                }
+                sb.append(pieceCharacter(1L << (8 * i + j)));
             }
             sb.append("\n");
         }
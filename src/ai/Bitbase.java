@@ -0,0 +1,218 @@
+package ai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static ai.BitBoards.*;
+
+/**
+ * Win/draw/loss of every position of one material signature, e.g. KRvKP, two bits per position,
+ * written by {@link BitbaseGenerator}
+ * <br>The side named first, the strong side, is white in the table. A position is indexed by
+ * whether the strong side is to move and the squares of the strong king, the weak king, the
+ * other strong pieces and the other weak pieces in the order of the name, so a probe is one
+ * index computation and one read. Impossible positions are stored as draws
+ * <br>Format: an 8-byte magic number and the number of positions, followed by the results 32 to
+ * a long, the first position in the lowest bits, all big-endian
+ */
+final class Bitbase {
+    static final long MAGIC = 0x4249544241534531L; // "BITBASE1"
+    static final int HEADER_SIZE = 16;
+    static final String EXTENSION = ".bitbase";
+    // Results from the point of view of the side to move
+    static final int DRAW = 0, WIN = 1, LOSS = 2;
+    // Piece types of the slots, in the order of the bitboards of BitBoards
+    static final int KING = 0, QUEEN = 1, ROOK = 2, BISHOP = 3, KNIGHT = 4, PAWN = 5;
+    private static final String PIECE_LETTERS = "KQRBNP";
+
+    final String name;
+    // Type of the piece of every slot of the index, and whether it belongs to the strong side
+    final int[] types;
+    final boolean[] strong;
+    final int positions;
+    private final LongBuffer results;
+
+    /**
+     * @param name    material signature, e.g. KRvKP
+     * @param results the results, see {@link #of}
+     */
+    private Bitbase(String name, LongBuffer results) {
+        this.name = name;
+        String[] sides = name.split("v");
+        types = new int[name.length() - 1];
+        strong = new boolean[types.length];
+        // Kings first, then the other pieces of each side
+        types[0] = types[1] = KING;
+        strong[0] = true;
+        int slot = 2;
+        for (int side = 0; side < 2; side++) {
+            for (int i = 1; i < sides[side].length(); i++) {
+                types[slot] = PIECE_LETTERS.indexOf(sides[side].charAt(i));
+                strong[slot++] = side == 0;
+            }
+        }
+        positions = positions(types.length);
+        this.results = results;
+    }
+
+    /**
+     * @param name    material signature, e.g. KRvKP
+     * @param results two bits for every position, see {@link #index}
+     * @return the table
+     */
+    static Bitbase of(String name, LongBuffer results) {
+        if (!validName(name)) {
+            throw new IllegalArgumentException("Invalid material signature: " + name);
+        }
+        Bitbase bitbase = new Bitbase(name, results);
+        if (results.capacity() != words(bitbase.positions)) {
+            throw new IllegalArgumentException("Invalid number of results for " + name + ": " + results.capacity());
+        }
+        return bitbase;
+    }
+
+    /**
+     * @return whether the name is a signature with two to four pieces, kings included
+     */
+    static boolean validName(String name) {
+        return name.matches("K[QRBNP]*vK[QRBNP]*") && name.length() - 1 <= 4;
+    }
+
+    /**
+     * @param pieces number of pieces, kings included
+     * @return number of positions of a table with the pieces
+     */
+    static int positions(int pieces) {
+        return 2 << (6 * pieces);
+    }
+
+    static int words(int positions) {
+        return (positions + 31) / 32;
+    }
+
+    /**
+     * @param strongToMove whether the strong side is to move
+     * @param squares      squares of the pieces of the slots, with the strong side as white
+     * @return index of the position
+     */
+    static int index(boolean strongToMove, int[] squares) {
+        int index = strongToMove ? 0 : 1;
+        for (int square : squares) {
+            index = index << 6 | square;
+        }
+        return index;
+    }
+
+    /**
+     * @param index index of a position, see {@link #index}
+     * @return {@link #DRAW}, {@link #WIN}, or {@link #LOSS}
+     */
+    int result(int index) {
+        return (int) (results.get(index >>> 5) >>> ((index & 31) << 1)) & 3;
+    }
+
+    /**
+     * @param tables tables by signature
+     * @param pieces bitboards of the kings, queens, rooks, bishops, knights and pawns of white,
+     *               then the same for black
+     * @return the result of the position for the side to move, or -1 if its table is missing
+     */
+    static int probe(Map<String, Bitbase> tables, long[] pieces, boolean whiteToMove) {
+        int[] whiteCounts = new int[5], blackCounts = new int[5];
+        for (int type = QUEEN; type <= PAWN; type++) {
+            whiteCounts[type - 1] = Long.bitCount(pieces[type]);
+            blackCounts[type - 1] = Long.bitCount(pieces[6 + type]);
+        }
+        if (drawn(whiteCounts, blackCounts)) {
+            return DRAW;
+        }
+        String white = side(whiteCounts), black = side(blackCounts);
+        Bitbase bitbase = tables.get(white + 'v' + black);
+        if (bitbase != null) {
+            return bitbase.probe(pieces, true, whiteToMove);
+        }
+        bitbase = tables.get(black + 'v' + white);
+        return bitbase == null ? -1 : bitbase.probe(pieces, false, whiteToMove);
+    }
+
+    /**
+     * @param pieces bitboards of the pieces of both sides, see {@link #probe(Map, long[], boolean)}
+     * @param white  whether the strong side is white in the position, otherwise the board is
+     *               mirrored so it is
+     * @return the result of the position for the side to move
+     */
+    private int probe(long[] pieces, boolean white, boolean whiteToMove) {
+        int[] squares = new int[types.length];
+        long[] remaining = pieces.clone();
+        for (int slot = 0; slot < types.length; slot++) {
+            int board = (strong[slot] == white ? 0 : 6) + types[slot];
+            int square = Long.numberOfTrailingZeros(remaining[board]);
+            remaining[board] &= remaining[board] - 1;
+            squares[slot] = white ? square : square ^ 56;
+        }
+        return result(index(whiteToMove == white, squares));
+    }
+
+    /**
+     * @param out file to write
+     * @throws IOException if the file can't be written
+     */
+    void write(Path out) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(out)))) {
+            output.writeLong(MAGIC);
+            output.writeLong(positions);
+            for (int i = 0; i < results.capacity(); i++) {
+                output.writeLong(results.get(i));
+            }
+        }
+    }
+
+    /**
+     * @param whiteCounts number of queens, rooks, bishops, knights and pawns of white
+     * @param blackCounts the same for black
+     * @return the signature with the side with more material first
+     */
+    static String name(int[] whiteCounts, int[] blackCounts) {
+        String white = side(whiteCounts), black = side(blackCounts);
+        return material(whiteCounts) >= material(blackCounts) ? white + 'v' + black : black + 'v' + white;
+    }
+
+    private static String side(int[] counts) {
+        StringBuilder side = new StringBuilder("K");
+        for (int type = QUEEN; type <= PAWN; type++) {
+            for (int i = 0; i < counts[type - 1]; i++) {
+                side.append(PIECE_LETTERS.charAt(type));
+            }
+        }
+        return side.toString();
+    }
+
+    private static int material(int[] counts) {
+        return counts[0] * QUEEN_VAL + counts[1] * ROOK_VAL + counts[2] * BISHOP_VAL + counts[3] * KNIGHT_VAL +
+                counts[4] * PAWN_VAL;
+    }
+
+    /**
+     * @return whether neither side can ever mate: bare kings and a single minor piece at most
+     */
+    static boolean drawn(int[] whiteCounts, int[] blackCounts) {
+        int minors = 0;
+        for (int[] counts : new int[][]{whiteCounts, blackCounts}) {
+            if (counts[0] + counts[1] + counts[4] != 0) {
+                return false;
+            }
+            minors += counts[2] + counts[3];
+        }
+        return minors <= 1;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
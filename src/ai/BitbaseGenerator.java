@@ -0,0 +1,491 @@
+package ai;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static ai.BitBoards.*;
+
+/**
+ * Computes bitbases by retrograde analysis: every position is classified once by its own moves,
+ * moves that capture or promote are looked up in the smaller tables, and then results spread
+ * backwards from the decided positions through the moves that lead to them, until nothing
+ * changes. A position is won if one move leads to a lost position, lost if every move leads to
+ * a won one, and drawn if neither ever happens
+ * <br>Both passes run in parallel over blocks of positions, and tables that don't depend on each
+ * other are computed at the same time
+ * <br>En passant captures are ignored, so positions right after a double pawn move may be
+ * wrong when both sides have pawns
+ * <br>Usage: java ai.BitbaseGenerator [directory] [signatures], e.g. bitbases KQvK+KRvK+KPvK+KRvKP
+ */
+public final class BitbaseGenerator {
+    // Working states of positions, UNKNOWN until decided, where WIN and LOSS match Bitbase
+    private static final int UNKNOWN = 0, WIN = Bitbase.WIN, LOSS = Bitbase.LOSS, DRAW = 3;
+    // Bits of the move count in the cell of a position, below the state
+    private static final int COUNT_BITS = 6, COUNT_MASK = (1 << COUNT_BITS) - 1;
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(int[].class);
+    // A multiple of the four cells of an int, so no two threads ever write the same int in the first pass
+    private static final int BLOCK = 1 << 14;
+
+    private final Bitbase layout;
+    private final long[] results;
+    // Smaller tables the captures and promotions lead to
+    private final Map<String, Bitbase> tables;
+    private final int positions;
+    // A byte for every position, four to an int: the state, and for an undecided position the
+    // number of its moves that don't lead to a won position for the opponent. Both change with
+    // one compare-and-set of the int, so they never get out of step between threads
+    private final int[] cells;
+
+    private BitbaseGenerator(String name, Map<String, Bitbase> tables) {
+        int positions = Bitbase.positions(name.length() - 1);
+        results = new long[Bitbase.words(positions)];
+        layout = Bitbase.of(name, LongBuffer.wrap(results));
+        this.tables = tables;
+        this.positions = positions;
+        cells = new int[positions / 4];
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args.length > 0 ? args[0] : "bitbases");
+        String signatures = args.length > 1 ? args[1] : Bitbases.DEFAULT_SIGNATURES;
+        final long startTime = System.nanoTime();
+        Bitbases bitbases = Bitbases.open(directory, signatures);
+        System.out.printf("%d bitbases in %s ready in %.1f s%n", bitbases.tables().size(), directory,
+                (System.nanoTime() - startTime) / 1e9);
+        for (Bitbase bitbase : bitbases.tables().values()) {
+            int[] counts = new int[3];
+            // Positions with the strong side to move, the first half of the table
+            for (int index = 0; index < bitbase.positions / 2; index++) {
+                counts[bitbase.result(index)]++;
+            }
+            System.out.printf("%-6s %,11d positions, strong side to move: %,d wins, %,d losses, %,d draws or illegal%n",
+                    bitbase, bitbase.positions, counts[Bitbase.WIN], counts[Bitbase.LOSS], counts[Bitbase.DRAW]);
+        }
+    }
+
+    /**
+     * @param names signatures to compute
+     * @return the signatures and every table they depend on, each after its dependencies
+     */
+    static List<String> withDependencies(Iterable<String> names) {
+        Set<String> ordered = new LinkedHashSet<>();
+        for (String name : names) {
+            if (!Bitbase.validName(name)) {
+                throw new IllegalArgumentException("Invalid material signature: " + name);
+            }
+            addWithDependencies(name, ordered);
+        }
+        return new ArrayList<>(ordered);
+    }
+
+    private static void addWithDependencies(String name, Set<String> ordered) {
+        if (ordered.contains(name)) {
+            return;
+        }
+        for (String dependency : dependencies(name)) {
+            addWithDependencies(dependency, ordered);
+        }
+        ordered.add(name);
+    }
+
+    /**
+     * @return the tables one capture or promotion leads to, without the ones that are always drawn
+     */
+    static Set<String> dependencies(String name) {
+        String[] sides = name.split("v");
+        int[][] counts = {counts(sides[0]), counts(sides[1])};
+        Set<String> dependencies = new LinkedHashSet<>();
+        for (int side = 0; side < 2; side++) {
+            int[] own = counts[side];
+            for (int piece = 0; piece < own.length; piece++) {
+                if (own[piece] == 0) {
+                    continue;
+                }
+                own[piece]--;
+                addUnlessDrawn(counts, dependencies);
+                // A pawn promotes to any piece
+                if (piece == Bitbase.PAWN - 1) {
+                    for (int promoted = 0; promoted < Bitbase.PAWN - 1; promoted++) {
+                        own[promoted]++;
+                        addUnlessDrawn(counts, dependencies);
+                        own[promoted]--;
+                    }
+                }
+                own[piece]++;
+            }
+        }
+        return dependencies;
+    }
+
+    private static void addUnlessDrawn(int[][] counts, Set<String> dependencies) {
+        if (!Bitbase.drawn(counts[0], counts[1])) {
+            dependencies.add(Bitbase.name(counts[0], counts[1]));
+        }
+    }
+
+    /**
+     * @param side pieces of one side, e.g. KRP
+     * @return number of queens, rooks, bishops, knights and pawns
+     */
+    static int[] counts(String side) {
+        int[] counts = new int[5];
+        for (int i = 1; i < side.length(); i++) {
+            counts["QRBNP".indexOf(side.charAt(i))]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Computes tables in waves of the tables whose dependencies are all computed, in parallel
+     *
+     * @param names  signatures to compute, see {@link #withDependencies}
+     * @param tables tables computed or loaded already, to which the new tables are added
+     */
+    static void generate(List<String> names, Map<String, Bitbase> tables) {
+        List<String> remaining = new ArrayList<>(names);
+        while (!remaining.isEmpty()) {
+            List<String> wave = remaining.stream()
+                    .filter(name -> remaining.stream().noneMatch(dependencies(name)::contains))
+                    .toList();
+            if (wave.isEmpty()) {
+                throw new IllegalStateException("Bitbases depend on each other: " + remaining);
+            }
+            wave.parallelStream().forEach(name -> {
+                final long startTime = System.nanoTime();
+                Bitbase bitbase = generate(name, tables);
+                tables.put(name, bitbase);
+                System.out.printf("Bitbase %s computed in %.1f s%n", name, (System.nanoTime() - startTime) / 1e9);
+            });
+            remaining.removeAll(wave);
+        }
+    }
+
+    /**
+     * @param name   signature to compute
+     * @param tables every table the signature depends on
+     * @return the table
+     */
+    static Bitbase generate(String name, Map<String, Bitbase> tables) {
+        for (String dependency : dependencies(name)) {
+            if (!tables.containsKey(dependency)) {
+                throw new IllegalStateException("Bitbase " + name + " needs " + dependency);
+            }
+        }
+        BitbaseGenerator generator = new BitbaseGenerator(name, tables);
+        int[] decided = IntStream.range(0, blocks(generator.positions)).parallel()
+                .mapToObj(generator::classify)
+                .flatMapToInt(Arrays::stream)
+                .toArray();
+        while (decided.length > 0) {
+            int[] current = decided;
+            decided = IntStream.range(0, blocks(current.length)).parallel()
+                    .mapToObj(block -> generator.propagate(current, block))
+                    .flatMapToInt(Arrays::stream)
+                    .toArray();
+        }
+        return generator.pack();
+    }
+
+    private static int blocks(int size) {
+        return (size + BLOCK - 1) / BLOCK;
+    }
+
+    /**
+     * Decides the positions of a block that are mate, stalemate, impossible, or decided by a
+     * capture or promotion, and counts the moves of the others
+     *
+     * @return the positions of the block that are won or lost
+     */
+    private int[] classify(int block) {
+        int[] squares = new int[layout.types.length];
+        int[] decided = new int[BLOCK];
+        int count = 0;
+        int end = Math.min(positions, (block + 1) * BLOCK);
+        for (int index = block * BLOCK; index < end; index++) {
+            boolean whiteToMove = decode(index, squares);
+            int cell = legal(squares, whiteToMove) ? classify(squares, whiteToMove) : DRAW << COUNT_BITS;
+            cells[index >>> 2] |= cell << ((index & 3) << 3);
+            int state = cell >>> COUNT_BITS;
+            if (state == WIN || state == LOSS) {
+                decided[count++] = index;
+            }
+        }
+        return Arrays.copyOf(decided, count);
+    }
+
+    /**
+     * @param whiteToMove whether the strong side, which is white in the table, is to move
+     * @return the cell of the position, see {@link #cells}
+     */
+    private int classify(int[] squares, boolean whiteToMove) {
+        long occupied = occupied(squares, -1);
+        long own = pieces(squares, whiteToMove);
+        int moves = 0, openMoves = 0;
+        for (int slot = 0; slot < squares.length; slot++) {
+            if (layout.strong[slot] != whiteToMove) {
+                continue;
+            }
+            int from = squares[slot], type = layout.types[slot];
+            long targets;
+            if (type == Bitbase.PAWN) {
+                int forward = whiteToMove ? 8 : -8;
+                targets = attacks(type, from, occupied, whiteToMove) & (occupied & ~own);
+                if ((occupied & SQUARE_TO_BITBOARD[from + forward]) == 0) {
+                    targets |= SQUARE_TO_BITBOARD[from + forward];
+                    boolean startRank = whiteToMove ? from < 16 : from >= 48;
+                    if (startRank && (occupied & SQUARE_TO_BITBOARD[from + 2 * forward]) == 0) {
+                        targets |= SQUARE_TO_BITBOARD[from + 2 * forward];
+                    }
+                }
+            } else {
+                targets = attacks(type, from, occupied, whiteToMove) & ~own;
+            }
+            for (; targets != 0; targets &= targets - 1) {
+                int to = Long.numberOfTrailingZeros(targets);
+                int captured = slotOn(squares, to);
+                squares[slot] = to;
+                // The moving side may not leave its king in check
+                if (inCheck(squares, whiteToMove, captured)) {
+                    squares[slot] = from;
+                    continue;
+                }
+                moves++;
+                boolean promotion = type == Bitbase.PAWN && (to < 8 || to >= 56);
+                if (captured == -1 && !promotion) {
+                    openMoves++;
+                } else {
+                    for (int promoted : promotion ? new int[]{Bitbase.QUEEN, Bitbase.ROOK, Bitbase.BISHOP,
+                            Bitbase.KNIGHT} : new int[]{type}) {
+                        int result = probeOther(squares, slot, promoted, captured, !whiteToMove);
+                        if (result == Bitbase.LOSS) {
+                            squares[slot] = from;
+                            return WIN << COUNT_BITS;
+                        } else if (result == Bitbase.DRAW) {
+                            // Never leads to a won position for the opponent, so the position can't be lost
+                            openMoves++;
+                        }
+                    }
+                }
+                squares[slot] = from;
+            }
+        }
+        if (moves == 0) {
+            return (inCheck(squares, whiteToMove, -1) ? LOSS : DRAW) << COUNT_BITS;
+        }
+        if (openMoves > COUNT_MASK) {
+            throw new IllegalStateException("Too many moves in a position of bitbase " + layout);
+        }
+        return openMoves == 0 ? LOSS << COUNT_BITS : openMoves;
+    }
+
+    /**
+     * Decides the undecided positions with a move to one of a block of decided positions
+     *
+     * @param decided positions decided in the previous pass
+     * @return the positions decided now
+     */
+    private int[] propagate(int[] decided, int block) {
+        int[] squares = new int[layout.types.length];
+        int[] newlyDecided = new int[BLOCK];
+        int count = 0;
+        int end = Math.min(decided.length, (block + 1) * BLOCK);
+        for (int i = block * BLOCK; i < end; i++) {
+            int index = decided[i];
+            boolean won = state(index) == WIN;
+            // The side that moved into the position
+            boolean white = !decode(index, squares);
+            long occupied = occupied(squares, -1);
+            for (int slot = 0; slot < squares.length; slot++) {
+                if (layout.strong[slot] != white) {
+                    continue;
+                }
+                int to = squares[slot];
+                for (long origins = origins(layout.types[slot], to, occupied, white); origins != 0;
+                     origins &= origins - 1) {
+                    squares[slot] = Long.numberOfTrailingZeros(origins);
+                    // Impossible positions are drawn already
+                    int previous = Bitbase.index(white, squares);
+                    if (state(previous) == UNKNOWN && update(previous, won)) {
+                        if (count == newlyDecided.length) {
+                            newlyDecided = Arrays.copyOf(newlyDecided, 2 * count);
+                        }
+                        newlyDecided[count++] = previous;
+                    }
+                }
+                squares[slot] = to;
+            }
+        }
+        return Arrays.copyOf(newlyDecided, count);
+    }
+
+    private int state(int index) {
+        return (cells[index >>> 2] >>> (((index & 3) << 3) + COUNT_BITS)) & 3;
+    }
+
+    /**
+     * @param won whether a position the undecided position has a move to is won, otherwise it is lost
+     * @return whether the position is decided now: won if the move leads to a lost position, and
+     * lost once all its moves lead to won positions
+     */
+    private boolean update(int index, boolean won) {
+        int word = index >>> 2, shift = (index & 3) << 3;
+        while (true) {
+            int cells = (int) CELLS.getVolatile(this.cells, word);
+            int cell = cells >>> shift & 0xFF;
+            if (cell >>> COUNT_BITS != UNKNOWN) {
+                return false;
+            }
+            int updated = !won ? WIN << COUNT_BITS : cell == 1 ? LOSS << COUNT_BITS : cell - 1;
+            if (CELLS.compareAndSet(this.cells, word, cells, cells & ~(0xFF << shift) | updated << shift)) {
+                return updated >>> COUNT_BITS != UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * @return the table, with positions that are still undecided drawn
+     */
+    private Bitbase pack() {
+        for (int index = 0; index < positions; index++) {
+            int state = state(index);
+            int result = state == WIN || state == LOSS ? state : Bitbase.DRAW;
+            results[index >>> 5] |= (long) result << ((index & 31) << 1);
+        }
+        return layout;
+    }
+
+    /**
+     * @return whether the strong side is to move
+     */
+    private boolean decode(int index, int[] squares) {
+        for (int slot = squares.length - 1; slot >= 0; slot--) {
+            squares[slot] = index & 63;
+            index >>>= 6;
+        }
+        return index == 0;
+    }
+
+    /**
+     * @return whether no two pieces share a square, no pawn is on the first or last rank, and
+     * the side that is not to move is not in check
+     */
+    private boolean legal(int[] squares, boolean whiteToMove) {
+        long occupied = 0;
+        for (int slot = 0; slot < squares.length; slot++) {
+            long square = SQUARE_TO_BITBOARD[squares[slot]];
+            if ((occupied & square) != 0 || layout.types[slot] == Bitbase.PAWN && (square & (RANK_1 | RANK_8)) != 0) {
+                return false;
+            }
+            occupied |= square;
+        }
+        return !inCheck(squares, !whiteToMove, -1);
+    }
+
+    /**
+     * @param removed slot of a captured piece to leave out, or -1
+     */
+    private boolean inCheck(int[] squares, boolean white, int removed) {
+        int king = squares[white ? 0 : 1];
+        long occupied = occupied(squares, removed);
+        for (int slot = 0; slot < squares.length; slot++) {
+            if (slot != removed && layout.strong[slot] != white &&
+                    (attacks(layout.types[slot], squares[slot], occupied, !white) & SQUARE_TO_BITBOARD[king]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the result for the side to move after a capture or promotion, from the smaller tables
+     */
+    private int probeOther(int[] squares, int moved, int movedType, int captured, boolean whiteToMove) {
+        long[] pieces = new long[12];
+        for (int slot = 0; slot < squares.length; slot++) {
+            if (slot != captured) {
+                int type = slot == moved ? movedType : layout.types[slot];
+                pieces[(layout.strong[slot] ? 0 : 6) + type] |= SQUARE_TO_BITBOARD[squares[slot]];
+            }
+        }
+        int result = Bitbase.probe(tables, pieces, whiteToMove);
+        if (result == -1) {
+            throw new IllegalStateException("Bitbase " + layout + " is missing a dependency");
+        }
+        return result;
+    }
+
+    private long occupied(int[] squares, int removed) {
+        long occupied = 0;
+        for (int slot = 0; slot < squares.length; slot++) {
+            if (slot != removed) {
+                occupied |= SQUARE_TO_BITBOARD[squares[slot]];
+            }
+        }
+        return occupied;
+    }
+
+    private long pieces(int[] squares, boolean white) {
+        long pieces = 0;
+        for (int slot = 0; slot < squares.length; slot++) {
+            if (layout.strong[slot] == white) {
+                pieces |= SQUARE_TO_BITBOARD[squares[slot]];
+            }
+        }
+        return pieces;
+    }
+
+    private static int slotOn(int[] squares, int square) {
+        for (int slot = 0; slot < squares.length; slot++) {
+            if (squares[slot] == square) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return squares a piece of the type on the square attacks
+     */
+    private static long attacks(int type, int square, long occupied, boolean white) {
+        return switch (type) {
+            case Bitbase.KING -> KING_POSSIBLE_MOVES[square];
+            case Bitbase.QUEEN -> MoveGeneration.getRookAttacks(square, occupied) |
+                    MoveGeneration.getBishopAttacks(square, occupied);
+            case Bitbase.ROOK -> MoveGeneration.getRookAttacks(square, occupied);
+            case Bitbase.BISHOP -> MoveGeneration.getBishopAttacks(square, occupied);
+            case Bitbase.KNIGHT -> KNIGHT_POSSIBLE_MOVES[square];
+            default -> (white ? WHITE_PAWN_POSSIBLE_CAPTURES : BLACK_PAWN_POSSIBLE_CAPTURES)[square];
+        };
+    }
+
+    /**
+     * @return empty squares from which a piece of the type may have moved to the square without
+     * capturing or promoting
+     */
+    private static long origins(int type, int square, long occupied, boolean white) {
+        if (type != Bitbase.PAWN) {
+            return attacks(type, square, occupied, white) & ~occupied;
+        }
+        int back = white ? -8 : 8;
+        long origins = 0;
+        // A pawn never stands on its first rank
+        if (square + back >= 8 && square + back < 56 && (occupied & SQUARE_TO_BITBOARD[square + back]) == 0) {
+            origins |= SQUARE_TO_BITBOARD[square + back];
+            boolean doubleMoveRank = white ? square >>> 3 == 3 : square >>> 3 == 4;
+            if (doubleMoveRank && (occupied & SQUARE_TO_BITBOARD[square + 2 * back]) == 0) {
+                origins |= SQUARE_TO_BITBOARD[square + 2 * back];
+            }
+        }
+        return origins;
+    }
+}
@@ -0,0 +1,164 @@
+package ai;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Bitbases of a directory, memory-mapped so a probe only touches the page of its position
+ * <br>Tables that are missing or unreadable are computed with {@link BitbaseGenerator} and
+ * written on first use, on a background thread so constructing an engine never waits for them
+ * <br>Bitbases only know wins, draws and losses, not distances, and don't count the fifty-move rule
+ */
+final class Bitbases {
+    // Signatures are separated by '+', since engine settings are separated by commas
+    static final String DEFAULT_SIGNATURES = "KQvK+KRvK+KPvK";
+
+    private static final Map<String, CompletableFuture<Bitbases>> LOADED = new ConcurrentHashMap<>();
+    private static final Executor LOADER = task -> {
+        Thread thread = new Thread(task, "bitbase-loader");
+        thread.setDaemon(true);
+        thread.start();
+    };
+
+    private final Map<String, Bitbase> tables;
+    private final int maxPieces;
+
+    /**
+     * @param tables tables by signature, see {@link BitbaseGenerator#generate(List, Map)}
+     */
+    Bitbases(Map<String, Bitbase> tables) {
+        this.tables = Collections.unmodifiableMap(tables);
+        maxPieces = tables.keySet().stream().mapToInt(name -> name.length() - 1).max().orElse(0);
+    }
+
+    /**
+     * Starts loading the bitbases if they aren't loaded or loading already
+     *
+     * @param directory  directory of the bitbase files
+     * @param signatures material signatures separated by '+', e.g. KQvK+KRvK
+     * @return the bitbases once they are loaded, or null if they could not be loaded
+     */
+    static CompletableFuture<Bitbases> load(String directory, String signatures) {
+        return LOADED.computeIfAbsent(directory + '\n' + signatures,
+                key -> CompletableFuture.supplyAsync(() -> loadNow(directory, signatures), LOADER));
+    }
+
+    private static Bitbases loadNow(String directory, String signatures) {
+        final long startTime = System.nanoTime();
+        try {
+            Bitbases bitbases = open(Path.of(directory), signatures);
+            System.out.printf("%d bitbases loaded from %s in %.1f ms%n", bitbases.tables.size(), directory,
+                    (System.nanoTime() - startTime) / 1e6);
+            return bitbases;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Bitbases not loaded: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Maps the tables of the signatures and of every table they depend on, and computes and
+     * writes the ones that are missing
+     *
+     * @param directory  directory of the bitbase files, which is created if needed
+     * @param signatures material signatures separated by '+'
+     * @return the tables
+     * @throws IOException if the directory can't be created or a computed table can't be written
+     */
+    static Bitbases open(Path directory, String signatures) throws IOException {
+        List<String> names = BitbaseGenerator.withDependencies(Arrays.asList(signatures.split("\\+")));
+        Map<String, Bitbase> tables = new ConcurrentHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String name : names) {
+            Path file = directory.resolve(name + Bitbase.EXTENSION);
+            if (!Files.exists(file)) {
+                missing.add(name);
+                continue;
+            }
+            try {
+                tables.put(name, map(file, name));
+            } catch (IOException e) {
+                System.err.println("Recomputing bitbase: " + e.getMessage());
+                missing.add(name);
+            }
+        }
+        if (!missing.isEmpty()) {
+            BitbaseGenerator.generate(missing, tables);
+            Files.createDirectories(directory);
+            try {
+                missing.forEach(name -> {
+                    try {
+                        tables.get(name).write(directory.resolve(name + Bitbase.EXTENSION));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return new Bitbases(tables);
+    }
+
+    /**
+     * @return the table in the file, mapped read-only
+     * @throws IOException if the file is not a bitbase of the signature
+     */
+    private static Bitbase map(Path file, String name) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int positions = Bitbase.positions(name.length() - 1);
+            long size = Bitbase.HEADER_SIZE + (long) Bitbase.words(positions) * Long.BYTES;
+            if (channel.size() != size) {
+                throw new IOException("Corrupt bitbase " + file + " of " + channel.size() + " bytes");
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (data.getLong(0) != Bitbase.MAGIC || data.getLong(8) != positions) {
+                throw new IOException("Corrupt bitbase " + file + ": wrong header");
+            }
+            return Bitbase.of(name, data.slice(Bitbase.HEADER_SIZE, (int) size - Bitbase.HEADER_SIZE).asLongBuffer());
+        }
+    }
+
+    /**
+     * @return the tables by signature
+     */
+    Map<String, Bitbase> tables() {
+        return tables;
+    }
+
+    /**
+     * @return largest number of pieces, kings included, of a position in the tables
+     */
+    int maxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * @param state position without castling rights
+     * @return {@link Bitbase#WIN}, {@link Bitbase#DRAW} or {@link Bitbase#LOSS} for the side to
+     * move, or -1 if the position is not in the tables
+     */
+    int probe(BitBoards state) {
+        // The tables don't know en passant captures
+        if (state.enPassantIndex != -1) {
+            return -1;
+        }
+        long[] pieces = {state.whiteKing, state.whiteQueens, state.whiteRooks, state.whiteBishops,
+                state.whiteKnights, state.whitePawns, state.blackKing, state.blackQueens, state.blackRooks,
+                state.blackBishops, state.blackKnights, state.blackPawns};
+        return Bitbase.probe(tables, pieces, state.whiteToMove);
+    }
+}
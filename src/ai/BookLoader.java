@@ -0,0 +1,78 @@
+package ai;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads opening books on a background thread, so constructing an engine never waits for its
+ * book. Every book is loaded once and shared by all engines that use it
+ */
+final class BookLoader {
+    // Book bundled next to the engine classes
+    static final String DEFAULT_BOOK = "Computations/opening_book.bin";
+
+    private static final Map<String, CompletableFuture<OpeningBook>> BOOKS = new ConcurrentHashMap<>();
+    private static final Executor LOADER = task -> {
+        Thread thread = new Thread(task, "opening-book-loader");
+        thread.setDaemon(true);
+        thread.start();
+    };
+
+    private BookLoader() {
+    }
+
+    /**
+     * Starts loading the book if it isn't loaded or loading already
+     *
+     * @param bookFile path of the book, or empty for the bundled book
+     * @return the book once it is loaded, or null if it could not be loaded
+     */
+    static CompletableFuture<OpeningBook> load(String bookFile) {
+        return BOOKS.computeIfAbsent(bookFile,
+                key -> CompletableFuture.supplyAsync(() -> loadNow(bookFile), LOADER));
+    }
+
+    private static OpeningBook loadNow(String bookFile) {
+        final long startTime = System.nanoTime();
+        try {
+            OpeningBook book = bookFile.isEmpty() ? loadResource() : OpeningBook.open(Path.of(bookFile));
+            System.out.printf("Opening book %s loaded in %.1f ms (%d moves)%n",
+                    bookFile.isEmpty() ? DEFAULT_BOOK : bookFile, (System.nanoTime() - startTime) / 1e6, book.size());
+            return book;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Opening book not loaded: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Maps the bundled book when the classes are in a directory, and reads it into memory when
+     * they are in a jar, since a jar entry can't be mapped
+     */
+    private static OpeningBook loadResource() throws IOException {
+        URL url = BookLoader.class.getResource(DEFAULT_BOOK);
+        if (url == null) {
+            throw new IOException(DEFAULT_BOOK + " is not on the classpath");
+        }
+        if (url.getProtocol().equals("file")) {
+            try {
+                return OpeningBook.open(Path.of(url.toURI()));
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid opening book location: " + url, e);
+            }
+        }
+        try (InputStream input = url.openStream()) {
+            byte[] data = input.readAllBytes();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(data.length).put(data).flip();
+            return OpeningBook.of(buffer);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package ai;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for every lookup of a position in the opening book
+ */
+@Name("chess.BookProbe")
+@Label("Opening Book Probe")
+@Category({"Chess", "Engine"})
+@Description("Lookup of a position in the opening book")
+final class BookProbeEvent extends Event {
+    @Label("FEN")
+    String fen;
+
+    @Label("Hit")
+    boolean hit;
+
+    @Label("Move")
+    String move;
+}
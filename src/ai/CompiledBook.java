@@ -0,0 +1,79 @@
+package ai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opening book in the project's format, written by {@link OpeningBookCompiler}
+ * <br>Format: an 8-byte magic number followed by records sorted by key, each made of a 64-bit
+ * {@link Zobrist} key, a 16-bit packed move, and a 32-bit weight, all big-endian
+ */
+final class CompiledBook implements OpeningBook {
+    static final long MAGIC = 0x4348455353424B31L; // "CHESSBK1"
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 14;
+
+    private final ByteBuffer records;
+    private final int size;
+
+    private CompiledBook(ByteBuffer records) {
+        this.records = records;
+        this.size = records.capacity() / RECORD_SIZE;
+    }
+
+    /**
+     * @param data whole book file
+     * @return the book
+     * @throws IOException if the data is not a book
+     */
+    static CompiledBook of(ByteBuffer data) throws IOException {
+        int length = data.capacity();
+        if (length < HEADER_SIZE || (length - HEADER_SIZE) % RECORD_SIZE != 0) {
+            throw new IOException("Invalid opening book size: " + length);
+        }
+        if (data.getLong(0) != MAGIC) {
+            throw new IOException("Not a compiled opening book");
+        }
+        return new CompiledBook(data.slice(HEADER_SIZE, length - HEADER_SIZE));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public List<Entry> probe(BitBoards state) {
+        return probe(state.key);
+    }
+
+    /**
+     * @param key {@link Zobrist} key of the position
+     * @return the book moves of the position, empty if it is not in the book
+     */
+    List<Entry> probe(long key) {
+        // Binary search for the first record with the key
+        int low = 0, high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(keyAt(middle), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (int i = low; i < size && keyAt(i) == key; i++) {
+            int offset = i * RECORD_SIZE;
+            entries.add(new Entry(Short.toUnsignedInt(records.getShort(offset + 8)), records.getInt(offset + 10)));
+        }
+        return entries;
+    }
+
+    private long keyAt(int index) {
+        return records.getLong(index * RECORD_SIZE);
+    }
+}
@@ -0,0 +1,140 @@
+package ai;
+
+/**
+ * Engine settings that can be changed without changing code, so two versions of the engine can
+ * be compared against each other
+ */
+public final class EngineConfig {
+    boolean useOpeningBook = true;
+    // Compiled or Polyglot book, the format is detected from the file, or empty for the bundled book
+    String bookFile = "";
+    OpeningBook.Policy bookPolicy = OpeningBook.Policy.WEIGHTED;
+    // Number of plies from the start of the game the book is used for, or 0 for no limit
+    int bookDepth = 0;
+    // File to append a JSON line with the statistics of every search to, or empty for none
+    String statsLog = "";
+    // Size of the evaluation cache in megabytes, or 0 for none
+    int evalCacheMB = EvalCache.DEFAULT_MEGABYTES;
+    // Forward pruning near the leaves, see NegaMax.negaMax
+    boolean futilityPruning = true;
+    boolean reverseFutilityPruning = true;
+    boolean razoring = true;
+    boolean lateMovePruning = true;
+    // Directory of the bitbases, computed there on first use if missing, or empty for none
+    String bitbasePath = "";
+    // Material signatures of the bitbases separated by '+', e.g. KQvK+KRvK
+    String bitbases = Bitbases.DEFAULT_SIGNATURES;
+    // Network to evaluate positions with instead of the hand-written terms, or empty for none
+    String nnueFile = "";
+
+    public EngineConfig() {
+    }
+
+    private EngineConfig(EngineConfig config) {
+        this.useOpeningBook = config.useOpeningBook;
+        this.bookFile = config.bookFile;
+        this.bookPolicy = config.bookPolicy;
+        this.bookDepth = config.bookDepth;
+        this.statsLog = config.statsLog;
+        this.evalCacheMB = config.evalCacheMB;
+        this.futilityPruning = config.futilityPruning;
+        this.reverseFutilityPruning = config.reverseFutilityPruning;
+        this.razoring = config.razoring;
+        this.lateMovePruning = config.lateMovePruning;
+        this.bitbasePath = config.bitbasePath;
+        this.bitbases = config.bitbases;
+        this.nnueFile = config.nnueFile;
+    }
+
+    /**
+     * @param spec comma separated settings, e.g. "book=false"
+     * @return the default configuration changed by the given settings
+     */
+    public static EngineConfig parse(String spec) {
+        EngineConfig config = new EngineConfig();
+        for (String setting : spec.split(",")) {
+            if (setting.isBlank()) {
+                continue;
+            }
+            String[] parts = setting.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid engine setting: " + setting);
+            }
+            config.set(parts[0].strip(), parts[1].strip());
+        }
+        return config;
+    }
+
+    /**
+     * @param name  name of the setting
+     * @param value new value of the setting
+     */
+    public void set(String name, String value) {
+        switch (name) {
+            case "book" -> useOpeningBook = parseBoolean(name, value);
+            case "bookFile" -> bookFile = value;
+            case "bookPolicy" -> {
+                try {
+                    bookPolicy = OpeningBook.Policy.valueOf(value.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+                }
+            }
+            case "bookDepth" -> bookDepth = parseInt(name, value, 0);
+            case "statsLog" -> statsLog = value;
+            case "evalCacheMB" -> {
+                evalCacheMB = parseInt(name, value, 0);
+                if (evalCacheMB > 1024) {
+                    throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+                }
+            }
+            case "futility" -> futilityPruning = parseBoolean(name, value);
+            case "reverseFutility" -> reverseFutilityPruning = parseBoolean(name, value);
+            case "razoring" -> razoring = parseBoolean(name, value);
+            case "lmp" -> lateMovePruning = parseBoolean(name, value);
+            case "bitbasePath" -> bitbasePath = value;
+            case "bitbases" -> {
+                for (String signature : value.split("\\+")) {
+                    if (!Bitbase.validName(signature)) {
+                        throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+                    }
+                }
+                bitbases = value;
+            }
+            case "nnueFile" -> nnueFile = value;
+            default -> throw new IllegalArgumentException("Unknown engine setting: " + name);
+        }
+    }
+
+    private static boolean parseBoolean(String name, String value) {
+        return switch (value) {
+            case "true" -> true;
+            case "false" -> false;
+            default -> throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+        };
+    }
+
+    private static int parseInt(String name, String value, int minimum) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= minimum) {
+                return result;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+    }
+
+    public EngineConfig copy() {
+        return new EngineConfig(this);
+    }
+
+    @Override
+    public String toString() {
+        return "book=" + useOpeningBook + ",bookFile=" + bookFile +
+                ",bookPolicy=" + bookPolicy.name().toLowerCase() + ",bookDepth=" + bookDepth + ",statsLog=" + statsLog +
+                ",evalCacheMB=" + evalCacheMB + ",futility=" + futilityPruning + ",reverseFutility=" +
+                reverseFutilityPruning + ",razoring=" + razoring + ",lmp=" + lateMovePruning +
+                ",bitbasePath=" + bitbasePath + ",bitbases=" + bitbases + ",nnueFile=" + nnueFile;
+    }
+}
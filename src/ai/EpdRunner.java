@@ -0,0 +1,236 @@
+package ai;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs an EPD test suite, e.g. "Win at Chess", through {@link NegaMax} and reports which positions
+ * were solved and how fast
+ * <br>Usage: java ai.EpdRunner suite.epd [--time ms | --nodes n] [--threads n] [--out results.csv]
+ * <br>Understands the bm (best move), am (avoid move), and id opcodes
+ */
+public class EpdRunner {
+    /**
+     * @param id         name of the position, or the line number if there is no id opcode
+     * @param FEN        position to search
+     * @param bestMoves  moves that solve the position, in the same format as {@link SearchResult#bestMove()}
+     * @param avoidMoves moves that fail the position, in the same format as {@link SearchResult#bestMove()}
+     */
+    record EpdPosition(String id, String FEN, List<String> bestMoves, List<String> avoidMoves) {
+        boolean solvedBy(String move) {
+            return move != null && (bestMoves.isEmpty() || bestMoves.contains(move)) &&
+                    !avoidMoves.contains(move);
+        }
+    }
+
+    /**
+     * @param position        position that was searched
+     * @param move            move the engine chose in standard algebraic notation
+     * @param solved          if the chosen move solves the position
+     * @param timeToSolution  time until the engine chose a solving move and kept it, or -1 if not solved
+     * @param nodesToSolution nodes until the engine chose a solving move and kept it, or -1 if not solved
+     * @param result          result of the whole search
+     */
+    record Outcome(EpdPosition position, String move, boolean solved, long timeToSolution,
+                   long nodesToSolution, SearchResult result) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java ai.EpdRunner suite.epd [--time ms | --nodes n] [--threads n] [--out results.csv]");
+            System.exit(1);
+        }
+        Path suite = Path.of(args[0]);
+        SearchLimits limits = SearchLimits.time(1000);
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path out = Path.of("epd_results.csv");
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--time" -> limits = SearchLimits.time(Long.parseLong(args[i + 1]));
+                case "--nodes" -> limits = SearchLimits.nodes(Long.parseLong(args[i + 1]));
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--out" -> out = Path.of(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        List<EpdPosition> positions = readSuite(suite);
+        try (BatchEvaluator evaluator = new BatchEvaluator(threads);
+             PrintWriter writer = new PrintWriter(Files.newBufferedWriter(out))) {
+            writer.println("id,fen,move,solved,time_to_solution_ms,nodes_to_solution,depth,nodes,time_ms,error");
+            int[] solvedCount = new int[1];
+            final SearchLimits positionLimits = limits;
+            BatchEvaluator.BatchStats stats = evaluator.evaluate(
+                    positions.stream().map(position -> new BatchEvaluator.Position(position.FEN(), positionLimits)),
+                    BatchEvaluator.Order.INPUT, result -> {
+                        EpdPosition position = positions.get((int) result.index());
+                        if (result.result() == null) {
+                            System.out.printf("%-20s error: %s%n", position.id(), result.error());
+                            writer.printf("%s,%s,,false,-1,-1,0,0,0,%s%n", csv(position.id()),
+                                    csv(position.FEN()), csv(result.error()));
+                            return;
+                        }
+
+                        Outcome outcome = score(position, result);
+                        if (outcome.solved()) {
+                            ++solvedCount[0];
+                        }
+                        SearchResult search = outcome.result();
+                        System.out.printf("%-20s %-8s %-6s depth %2d, %d ms%n", position.id(), outcome.move(),
+                                outcome.solved() ? "solved" : "failed", search.depth(), search.timeMillis());
+                        writer.printf("%s,%s,%s,%b,%d,%d,%d,%d,%d,%n", csv(position.id()), csv(position.FEN()),
+                                csv(outcome.move()), outcome.solved(), outcome.timeToSolution(),
+                                outcome.nodesToSolution(), search.depth(), search.nodes(), search.timeMillis());
+                    });
+            System.out.printf("Solved %d/%d%n%s%n", solvedCount[0], positions.size(), stats);
+        }
+        System.out.println("Results written to " + out.toAbsolutePath());
+    }
+
+    /**
+     * Finds when the engine settled on a solving move, which is the first iteration of the
+     * last run of solving iterations
+     */
+    static Outcome score(EpdPosition position, BatchEvaluator.Result result) {
+        SearchResult search = result.result();
+        boolean solved = position.solvedBy(search.bestMove());
+        long timeToSolution = -1, nodesToSolution = -1;
+        if (solved) {
+            timeToSolution = search.timeMillis();
+            nodesToSolution = search.nodes();
+            List<SearchResult> iterations = result.iterations();
+            for (int i = iterations.size() - 1; i >= 0 && position.solvedBy(iterations.get(i).bestMove()); i--) {
+                timeToSolution = iterations.get(i).timeMillis();
+                nodesToSolution = iterations.get(i).nodes();
+            }
+        }
+
+        String move = search.bestMove() == null ? "none" :
+                AlgebraicNotation.toSAN(new BitBoards(position.FEN()), findMove(position.FEN(), search.bestMove()));
+        return new Outcome(position, move, solved, timeToSolution, nodesToSolution, search);
+    }
+
+    private static Move findMove(String FEN, String engineMove) {
+        BitBoards state = new BitBoards(FEN);
+        for (Move move : MoveGeneration.generateLegalMoves(state)) {
+            if (move.toString().equals(engineMove)) {
+                return move;
+            }
+        }
+        throw new IllegalStateException("Engine move is not legal: " + engineMove);
+    }
+
+    static List<EpdPosition> readSuite(Path suite) throws IOException {
+        List<EpdPosition> positions = new ArrayList<>();
+        List<String> lines = Files.readAllLines(suite);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                positions.add(parse(line, i + 1));
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                System.err.println("Skipping line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * @param line       EPD record: four FEN fields followed by opcodes ending in ';'
+     * @param lineNumber used as the id if there is no id opcode
+     * @return the parsed position
+     * @throws IllegalArgumentException if the record is invalid or has no bm or am moves
+     */
+    static EpdPosition parse(String line, int lineNumber) {
+        String[] fields = line.split("\\s+", 5);
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Invalid EPD: " + line);
+        }
+
+        String id = String.valueOf(lineNumber), halfMoveClock = "0", moveCounter = "1";
+        List<String> bestMoves = new ArrayList<>(), avoidMoves = new ArrayList<>();
+        List<String[]> moveOperations = new ArrayList<>();
+        for (String operation : fields.length == 5 ? splitOperations(fields[4]) : List.<String>of()) {
+            String[] parts = operation.split("\\s+", 2);
+            String operands = parts.length == 2 ? parts[1].strip() : "";
+            switch (parts[0]) {
+                case "id" -> id = unquote(operands);
+                case "hmvc" -> halfMoveClock = operands;
+                case "fmvn" -> moveCounter = operands;
+                case "bm", "am" -> {
+                    if (operands.isEmpty()) {
+                        throw new IllegalArgumentException("No moves for " + parts[0] + ": " + line);
+                    }
+                    moveOperations.add(new String[]{parts[0], operands});
+                }
+                default -> {
+                    // Other opcodes such as c0 comments are not needed
+                }
+            }
+        }
+
+        // Without either there is no move to score the search against
+        if (moveOperations.isEmpty()) {
+            throw new IllegalArgumentException("No bm or am opcode: " + line);
+        }
+
+        String FEN = String.join(" ", fields[0], fields[1], fields[2], fields[3], halfMoveClock, moveCounter);
+        BitBoards state = new BitBoards(FEN);
+        for (String[] operation : moveOperations) {
+            List<String> moves = operation[0].equals("bm") ? bestMoves : avoidMoves;
+            for (String san : operation[1].split("\\s+")) {
+                moves.add(AlgebraicNotation.fromSAN(state, san).toString());
+            }
+        }
+        return new EpdPosition(id, FEN, List.copyOf(bestMoves), List.copyOf(avoidMoves));
+    }
+
+    /**
+     * Splits opcodes on ';' outside of quoted strings
+     */
+    private static List<String> splitOperations(String operations) {
+        List<String> result = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (char c : operations.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            if (c == ';' && !quoted) {
+                if (!current.toString().isBlank()) {
+                    result.add(current.toString().strip());
+                }
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (!current.toString().isBlank()) {
+            result.add(current.toString().strip());
+        }
+        return result;
+    }
+
+    private static String unquote(String operand) {
+        if (operand.length() >= 2 && operand.startsWith("\"") && operand.endsWith("\"")) {
+            return operand.substring(1, operand.length() - 1);
+        }
+        return operand;
+    }
+
+    private static String csv(String value) {
+        if (value.contains(",") || value.contains("\"")) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
@@ -0,0 +1,60 @@
+package ai;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Cache of static evaluations keyed by {@link BitBoards#key}, so a position reached again
+ * through a different move order is not evaluated again
+ * <br>Every entry is a single long holding the upper half of the key and the score, which is
+ * read and written atomically, so the cache can be shared between search threads without locks.
+ * A torn or overwritten entry just fails the key check and counts as a miss
+ */
+final class EvalCache {
+    static final int DEFAULT_MEGABYTES = 8;
+    private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long KEY_MASK = 0xFFFFFFFF00000000L;
+
+    private final long[] entries;
+
+    /**
+     * @param megabytes size of the cache, rounded down to a power of two number of entries
+     */
+    EvalCache(int megabytes) {
+        if (megabytes <= 0 || megabytes > 1024) {
+            throw new IllegalArgumentException("Invalid evaluation cache size: " + megabytes + " MB");
+        }
+        entries = new long[Integer.highestOneBit(megabytes * (1024 * 1024 / Long.BYTES))];
+    }
+
+    /**
+     * @param key   key of the position
+     * @param stats receives the probe and whether it hit, or null
+     * @return the stored score, or {@link Integer#MIN_VALUE} if the position is not in the cache
+     */
+    int probe(long key, SearchStats stats) {
+        long entry = (long) ENTRIES.getOpaque(entries, index(key));
+        if (stats != null) {
+            ++stats.evalCacheProbes;
+        }
+        if (entry == 0 || (entry & KEY_MASK) != (key & KEY_MASK)) {
+            return Integer.MIN_VALUE;
+        }
+        if (stats != null) {
+            ++stats.evalCacheHits;
+        }
+        return (int) entry;
+    }
+
+    /**
+     * @param key   key of the position
+     * @param score exact static score of the position
+     */
+    void store(long key, int score) {
+        ENTRIES.setOpaque(entries, index(key), (key & KEY_MASK) | (score & 0xFFFFFFFFL));
+    }
+
+    private int index(long key) {
+        return (int) key & (entries.length - 1);
+    }
+}
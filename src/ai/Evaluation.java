@@ -0,0 +1,140 @@
+package ai;
+
+import static ai.BitBoards.*;
+
+/**
+ * Material and piece-square tables for a middlegame and an endgame score, which are blended by
+ * the game phase so pieces like the king change their preferred squares as material comes off
+ * <br>Scores are in centipawns. {@link BitBoards} keeps the sums up to date as moves are made,
+ * so a leaf only has to blend them
+ */
+final class Evaluation {
+    // Piece indices, in the same order as Zobrist
+    static final int WHITE_PAWN = 0, WHITE_KNIGHT = 1, WHITE_BISHOP = 2, WHITE_ROOK = 3, WHITE_QUEEN = 4,
+            WHITE_KING = 5, BLACK_PAWN = 6, BLACK_KNIGHT = 7, BLACK_BISHOP = 8, BLACK_ROOK = 9, BLACK_QUEEN = 10,
+            BLACK_KING = 11;
+
+    // Phase of the starting position, from knights and bishops 1, rooks 2, and queens 4
+    static final int MAX_PHASE = 24;
+    private static final int[] PIECE_PHASE = {0, 1, 1, 2, 4, 0};
+
+    private static final int[] MG_MATERIAL = {PAWN_VAL, KNIGHT_VAL, BISHOP_VAL, ROOK_VAL, QUEEN_VAL, 0};
+    private static final int[] EG_MATERIAL = {120, 300, 320, 530, 950, 0};
+
+    // Tables from white's point of view as the board is printed, so a8 comes first
+    private static final int[] PAWN_MG = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            10, 10, 20, 30, 30, 20, 10, 10,
+            5, 5, 10, 25, 25, 10, 5, 5,
+            0, 0, 0, 20, 20, 0, 0, 0,
+            5, -5, -10, 0, 0, -10, -5, 5,
+            5, 10, 10, -20, -20, 10, 10, 5,
+            0, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] PAWN_EG = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            80, 80, 80, 80, 80, 80, 80, 80,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            30, 30, 30, 30, 30, 30, 30, 30,
+            20, 20, 20, 20, 20, 20, 20, 20,
+            10, 10, 10, 10, 10, 10, 10, 10,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] KNIGHT = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20, 0, 0, 0, 0, -20, -40,
+            -30, 0, 10, 15, 15, 10, 0, -30,
+            -30, 5, 15, 20, 20, 15, 5, -30,
+            -30, 0, 15, 20, 20, 15, 0, -30,
+            -30, 5, 10, 15, 15, 10, 5, -30,
+            -40, -20, 0, 5, 5, 0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50};
+    private static final int[] BISHOP = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 10, 10, 5, 0, -10,
+            -10, 5, 5, 10, 10, 5, 5, -10,
+            -10, 0, 10, 10, 10, 10, 0, -10,
+            -10, 10, 10, 10, 10, 10, 10, -10,
+            -10, 5, 0, 0, 0, 0, 5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20};
+    private static final int[] ROOK_MG = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            5, 10, 10, 10, 10, 10, 10, 5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            0, 0, 0, 5, 5, 0, 0, 0};
+    private static final int[] ROOK_EG = {
+            5, 5, 5, 5, 5, 5, 5, 5,
+            10, 10, 10, 10, 10, 10, 10, 10,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] QUEEN = {
+            -20, -10, -10, -5, -5, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 5, 5, 5, 0, -10,
+            -5, 0, 5, 5, 5, 5, 0, -5,
+            0, 0, 5, 5, 5, 5, 0, -5,
+            -10, 5, 5, 5, 5, 5, 0, -10,
+            -10, 0, 5, 0, 0, 0, 0, -10,
+            -20, -10, -10, -5, -5, -10, -10, -20};
+    private static final int[] KING_MG = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+            20, 20, 0, 0, 0, 0, 20, 20,
+            20, 30, 10, 0, 0, 10, 30, 20};
+    private static final int[] KING_EG = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10, 0, 0, -10, -20, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -30, 0, 0, 0, 0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50};
+
+    // Material plus piece-square value, indexed by piece and square, negative for black pieces
+    static final int[][] MG = new int[12][64];
+    static final int[][] EG = new int[12][64];
+    static final int[] PHASE = new int[12];
+
+    static {
+        int[][] mgTables = {PAWN_MG, KNIGHT, BISHOP, ROOK_MG, QUEEN, KING_MG};
+        int[][] egTables = {PAWN_EG, KNIGHT, BISHOP, ROOK_EG, QUEEN, KING_EG};
+        for (int piece = 0; piece < 6; piece++) {
+            for (int square = 0; square < 64; square++) {
+                // a1 is the first row of the printed board for black, and the last for white
+                MG[piece][square] = MG_MATERIAL[piece] + mgTables[piece][square ^ 56];
+                EG[piece][square] = EG_MATERIAL[piece] + egTables[piece][square ^ 56];
+                MG[piece + 6][square] = -(MG_MATERIAL[piece] + mgTables[piece][square]);
+                EG[piece + 6][square] = -(EG_MATERIAL[piece] + egTables[piece][square]);
+            }
+            PHASE[piece] = PHASE[piece + 6] = PIECE_PHASE[piece];
+        }
+    }
+
+    private Evaluation() {
+    }
+
+    /**
+     * @param mgScore middlegame score
+     * @param egScore endgame score
+     * @param phase   remaining phase, more than {@link #MAX_PHASE} after promotions
+     * @return the scores blended by how much material is left
+     */
+    static int taper(int mgScore, int egScore, int phase) {
+        int mgPhase = Math.min(phase, MAX_PHASE);
+        return (mgScore * mgPhase + egScore * (MAX_PHASE - mgPhase)) / MAX_PHASE;
+    }
+}
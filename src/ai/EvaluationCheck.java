@@ -0,0 +1,85 @@
+package ai;
+
+/**
+ * Checks the signs of evaluation terms on positions where the answer is known, since a term with
+ * the wrong sign still plays legal chess and is easy to miss
+ * <br>Usage: java ai.EvaluationCheck, which exits with status 1 if a check fails
+ */
+public final class EvaluationCheck {
+    // Pairs of positions where only the first side attacks the enemy king zone with the same pieces
+    private static final String[][] KING_ATTACKS = {
+            {"6k1/5ppp/8/6N1/8/3Q4/5PPP/4R1K1 w - - 0 1", "6k1/5ppp/8/6N1/8/8/3Q1PPP/4R1K1 w - - 0 1"},
+            {"4r1k1/5ppp/3q4/8/6n1/8/5PPP/6K1 b - - 0 1", "4r1k1/3q1ppp/8/8/6n1/8/5PPP/6K1 b - - 0 1"},
+    };
+    // Positions whose colour-flipped copies must score the opposite
+    private static final String[] SYMMETRY = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "6k1/5ppp/8/6N1/8/3Q4/5PPP/4R1K1 w - - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+
+    private EvaluationCheck() {
+    }
+
+    public static void main(String[] args) {
+        int failures = 0;
+        for (String[] pair : KING_ATTACKS) {
+            BitBoards attacking = new BitBoards(pair[0]), quiet = new BitBoards(pair[1]);
+            // From the point of view of the attacker, which is the side to move in both
+            int sign = attacking.whiteToMove ? 1 : -1;
+            int attackingScore = sign * PawnStructure.mg(AttackEvaluation.evaluate(attacking));
+            int quietScore = sign * PawnStructure.mg(AttackEvaluation.evaluate(quiet));
+            if (attackingScore <= quietScore) {
+                System.err.printf("King attack not rewarded: %d for %s, %d for %s%n", attackingScore, pair[0],
+                        quietScore, pair[1]);
+                ++failures;
+            }
+        }
+        for (String FEN : SYMMETRY) {
+            long score = AttackEvaluation.evaluate(new BitBoards(FEN));
+            long flipped = AttackEvaluation.evaluate(new BitBoards(flip(FEN)));
+            if (PawnStructure.mg(score) != -PawnStructure.mg(flipped) ||
+                    PawnStructure.eg(score) != -PawnStructure.eg(flipped)) {
+                System.err.printf("Activity not symmetric: %d/%d for %s, %d/%d flipped%n", PawnStructure.mg(score),
+                        PawnStructure.eg(score), FEN, PawnStructure.mg(flipped), PawnStructure.eg(flipped));
+                ++failures;
+            }
+        }
+        System.out.println(failures == 0 ? "All evaluation checks passed" : failures + " evaluation checks failed");
+        if (failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the position with the board mirrored vertically and the colours swapped
+     */
+    static String flip(String FEN) {
+        String[] parts = FEN.split(" ");
+        String[] ranks = parts[0].split("/");
+        StringBuilder flipped = new StringBuilder();
+        for (int rank = ranks.length - 1; rank >= 0; rank--) {
+            flipped.append(swapCase(ranks[rank])).append(rank > 0 ? "/" : "");
+        }
+        flipped.append(parts[1].equals("w") ? " b " : " w ");
+        String castling = swapCase(parts[2]);
+        // Castling rights are listed white first
+        flipped.append(castling.equals("-") ? "-" : castling.replaceAll("[a-z]", "") + castling.replaceAll("[A-Z]", ""));
+        flipped.append(' ').append(parts[3].equals("-") ? "-" :
+                parts[3].charAt(0) + String.valueOf((char) ('1' + '8' - parts[3].charAt(1))));
+        for (int i = 4; i < parts.length; i++) {
+            flipped.append(' ').append(parts[i]);
+        }
+        return flipped.toString();
+    }
+
+    private static String swapCase(String text) {
+        StringBuilder swapped = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            swapped.append(Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c));
+        }
+        return swapped.toString();
+    }
+}
@@ -0,0 +1,31 @@
+package ai;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one completed iteration of iterative deepening
+ */
+@Name("chess.SearchIteration")
+@Label("Search Iteration")
+@Category({"Chess", "Engine"})
+@Description("Completed iteration of iterative deepening")
+final class IterationEvent extends Event {
+    @Label("Depth")
+    int depth;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Score")
+    int score;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Nodes per Second")
+    long nodesPerSecond;
+}
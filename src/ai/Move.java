@@ -73,34 +73,33 @@ record Move(int start, int end, MoveType moveType, PieceType pieceType, int valu
             throw new IllegalArgumentException("Error move type: " + move);
         }
 
-        if (move.moveType() == MoveType.CASTLE_LEFT || move.moveType() == MoveType.CASTLE_RIGHT) {
-            boolean valid = validateCastle(state, move);
-            if (!valid) {
-                return false;
-            }
+
+        return tryLegal(state, move) != null;
+    }
+
+    /**
+     * Makes a move from the pseudo-legal move generation if it is legal, so the search only makes
+     * each move once instead of once to validate it and once to search it
+     *
+     * @param state current state
+     * @param move  move to make
+     * @return the new state, or null if the move is illegal
+     */
+    static BitBoards tryLegal(BitBoards state, Move move) {
+        if ((move.moveType() == MoveType.CASTLE_LEFT || move.moveType() == MoveType.CASTLE_RIGHT) &&
+                !validateCastle(state, move)) {
+            return null;
         }
 
         // Is king checked after the move?
-        BitBoards tempState = state.tryMove(move);
-        return tempState.safeSquare(state.whiteToMove, state.whiteToMove ? tempState.whiteKing :
-                tempState.blackKing);
+        BitBoards newState = state.tryMove(move);
+        return newState.safeSquare(state.whiteToMove, Side.toMove(state).king(newState)) ? newState : null;
     }
 
     private static boolean validateCastle(BitBoards state, Move move) {
-        boolean movesOverSafeSquare;
-        if (move.moveType() == MoveType.CASTLE_LEFT) {
-            movesOverSafeSquare = state.safeSquare(state.whiteToMove, (state.whiteToMove ? state.whiteKing :
-                    state.blackKing) >>> 1);
-        } else {
-            movesOverSafeSquare = state.safeSquare(state.whiteToMove, (state.whiteToMove ? state.whiteKing :
-                    state.blackKing) << 1);
-        }
-        if (!movesOverSafeSquare) {
-            return false;
-        }
-
-        return state.safeSquare(state.whiteToMove, (state.whiteToMove ? state.whiteKing :
-                state.blackKing));
+        long king = Side.toMove(state).king(state);
+        long passedSquare = move.moveType() == MoveType.CASTLE_LEFT ? king >>> 1 : king << 1;
+        return state.safeSquare(state.whiteToMove, passedSquare) && state.safeSquare(state.whiteToMove, king);
     }
 
     @Override
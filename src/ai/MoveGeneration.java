@@ -45,28 +45,17 @@ public class MoveGeneration {
 
 
     /**
-     * Generate all possible moves for the current state
+     * Generate all possible moves for the current state, which may leave the king in check, see
+     * {@link Move#tryLegal}
      * <a href="https://chess.stackexchange.com/questions/4490/maximum-possible-movement-in-a-turn">Max: 218</a>
      *
      * @param state current state
-     * @return all possible moves
+     * @return all possible moves, captures and promotions first
      */
-    private static Move[] generateMoves(BitBoards state) {
+    static Move[] generateMoves(BitBoards state) {
         Move[] moves = new Move[256];
-        int index = 0;
-        long friendlyPawns = state.whiteToMove ? state.whitePawns : state.blackPawns;
-        long friendlyRooks = state.whiteToMove ? state.whiteRooks : state.blackRooks;
-        long friendlyKnights = state.whiteToMove ? state.whiteKnights : state.blackKnights;
-        long friendlyBishops = state.whiteToMove ? state.whiteBishops : state.blackBishops;
-        long friendlyQueens = state.whiteToMove ? state.whiteQueens : state.blackQueens;
-        long friendlyKing = state.whiteToMove ? state.whiteKing : state.blackKing;
-
-        index = generatePawnMoves(state, moves, index, friendlyPawns);
-        index = generateRookMoves(state, moves, index, friendlyRooks, false);
-        index = generateKnightMoves(state, moves, index, friendlyKnights);
-        index = generateBishopMoves(state, moves, index, friendlyBishops, false);
-        index = generateQueenMoves(state, moves, index, friendlyQueens);
-        index = generateKingMoves(state, moves, index, friendlyKing);
+        int index = generateCaptures(state, moves, 0);
+        index = generateQuiets(state, moves, index);
         if (index > 218) {
             throw new IllegalStateException("Invalid number of moves");
         }
@@ -75,120 +64,151 @@ public class MoveGeneration {
         return Arrays.copyOf(moves, index);
     }
 
-    private static int generatePawnMoves(BitBoards state, Move[] moves, int index, long friendlyPawns) {
-        long singleMove = (state.whiteToMove ? (friendlyPawns << 8) : (friendlyPawns >>> 8)) & ~state.allPieces;
-        long doubleMove = (state.whiteToMove ? ((singleMove & RANK_3) << 8) : ((singleMove & RANK_6) >>> 8)) & ~state.allPieces;
+    /**
+     * Generate the possible captures, en passant captures and promotions of the current state
+     *
+     * @param state current state
+     * @param moves buffer the moves are written to
+     * @param index index of the first free entry of the buffer
+     * @return index after the last generated move
+     */
+    static int generateCaptures(BitBoards state, Move[] moves, int index) {
+        Side side = Side.toMove(state);
+        long enemyPieces = side.enemyPieces(state);
+        index = generatePawnCaptures(state, side, moves, index, enemyPieces);
+        return generatePieceMoves(state, side, moves, index, enemyPieces);
+    }
 
-        // Pawn single moves
-        while (singleMove != 0) {
-            if (Long.bitCount(singleMove) > 8) {
-                throw new IllegalStateException("Invalid number of pawn double moves");
-            }
+    /**
+     * Generate the possible moves of the current state that neither capture nor promote,
+     * including castling
+     *
+     * @param state current state
+     * @param moves buffer the moves are written to
+     * @param index index of the first free entry of the buffer
+     * @return index after the last generated move
+     */
+    static int generateQuiets(BitBoards state, Move[] moves, int index) {
+        Side side = Side.toMove(state);
+        index = generatePawnPushes(state, side, moves, index);
+        index = generatePieceMoves(state, side, moves, index, ~state.allPieces);
+        return generateCastlingMoves(state, side, moves, index);
+    }
 
-            int end = Long.numberOfTrailingZeros(singleMove);
-            int start = state.whiteToMove ? end - 8 : end + 8;
-            index = addPawnMove(moves, index, start, end, state.whiteToMove, false, state);
-            singleMove ^= SQUARE_TO_BITBOARD[end];
+    /**
+     * Whether a quiet move from another position, such as a killer move, is also a possible
+     * move in the current state. Castling is never accepted
+     *
+     * @param state current state
+     * @param move  normal move or pawn double move
+     * @return true if {@link #generateQuiets} would generate the move
+     */
+    static boolean isPseudoLegalQuiet(BitBoards state, Move move) {
+        long start = SQUARE_TO_BITBOARD[move.start()], end = SQUARE_TO_BITBOARD[move.end()];
+        if ((end & state.allPieces) != 0) {
+            return false;
         }
-
-        // Pawn double moves
-        if (state.whiteToMove && (doubleMove & ~RANK_4) != 0) {
-            throw new IllegalStateException("Invalid WHITE pawn double move generation:\n" +
-                    longAsBitboard(doubleMove, false));
-        } else if (!state.whiteToMove && (doubleMove & ~RANK_5) != 0) {
-            throw new IllegalStateException("Invalid BLACK pawn double move generation:\n" +
-                    longAsBitboard(doubleMove, false));
+        Side side = Side.toMove(state);
+        long forward = side.push(start);
+        if (move.moveType() == Move.MoveType.PAWN_DOUBLE_MOVE) {
+            return (side.pawns(state) & start) != 0 && (forward & side.doubleMoveRank & ~state.allPieces) != 0 &&
+                    end == side.push(forward);
+        } else if (move.moveType() != Move.MoveType.NORMAL) {
+            return false;
         }
+        return switch (move.pieceType()) {
+            case PAWN -> (side.pawns(state) & start) != 0 && end == forward && (end & side.promotionRank) == 0;
+            case KNIGHT -> (side.knights(state) & start) != 0 && (KNIGHT_POSSIBLE_MOVES[move.start()] & end) != 0;
+            case BISHOP -> (side.bishops(state) & start) != 0 &&
+                    (getBishopAttacks(move.start(), state.allPieces) & end) != 0;
+            case ROOK -> (side.rooks(state) & start) != 0 && (getRookAttacks(move.start(), state.allPieces) & end) != 0;
+            case QUEEN -> (side.queens(state) & start) != 0 &&
+                    ((getRookAttacks(move.start(), state.allPieces) |
+                            getBishopAttacks(move.start(), state.allPieces)) & end) != 0;
+            case KING -> (side.king(state) & start) != 0 && (KING_POSSIBLE_MOVES[move.start()] & end) != 0;
+            default -> false;
+        };
+    }
 
-        while (doubleMove != 0) {
-            if (Long.bitCount(doubleMove) > 8) {
-                throw new IllegalStateException("Invalid number of pawn double moves");
-            }
+    /**
+     * @param targets squares the pieces other than pawns may move to
+     */
+    private static int generatePieceMoves(BitBoards state, Side side, Move[] moves, int index, long targets) {
+        index = generateRookMoves(state, moves, index, side.rooks(state), false, targets);
+        index = generateKnightMoves(moves, index, side.knights(state), targets);
+        index = generateBishopMoves(state, moves, index, side.bishops(state), false, targets);
+        index = generateQueenMoves(state, moves, index, side.queens(state), targets);
+        return generateKingMoves(moves, index, side.king(state), targets);
+    }
 
-            int end = Long.numberOfTrailingZeros(doubleMove);
-            int start = state.whiteToMove ? end - 16 : end + 16;
-            index = addPawnMove(moves, index, start, end, state.whiteToMove, true, state);
-            doubleMove ^= SQUARE_TO_BITBOARD[end];
-        }
+    /**
+     * Single and double pawn moves that don't promote, generated for all pawns at once
+     */
+    private static int generatePawnPushes(BitBoards state, Side side, Move[] moves, int index) {
+        long singleMove = side.push(side.pawns(state)) & ~state.allPieces;
+        long doubleMove = side.push(singleMove & side.doubleMoveRank) & ~state.allPieces;
+        index = addPawnMoves(moves, index, singleMove & ~side.promotionRank, side.forward, Move.MoveType.NORMAL);
+        return addPawnMoves(moves, index, doubleMove, 2 * side.forward, Move.MoveType.PAWN_DOUBLE_MOVE);
+    }
+
+    /**
+     * Pawn captures, en passant and all promotions, generated for all pawns at once
+     */
+    private static int generatePawnCaptures(BitBoards state, Side side, Move[] moves, int index, long enemyPieces) {
+        long pawns = side.pawns(state);
+        long pushed = side.push(pawns);
+
+        // Captures towards the h-file and the a-file
+        long eastCaptures = PawnStructure.east(pushed) & enemyPieces;
+        long westCaptures = PawnStructure.west(pushed) & enemyPieces;
+        index = addPawnMoves(moves, index, eastCaptures & ~side.promotionRank, side.forward + 1, Move.MoveType.NORMAL);
+        index = addPawnMoves(moves, index, westCaptures & ~side.promotionRank, side.forward - 1, Move.MoveType.NORMAL);
+        index = addPromotions(moves, index, eastCaptures & side.promotionRank, side.forward + 1);
+        index = addPromotions(moves, index, westCaptures & side.promotionRank, side.forward - 1);
+        // Promotions without capture
+        index = addPromotions(moves, index, pushed & ~state.allPieces & side.promotionRank, side.forward);
 
         // En passant
         if (state.enPassantIndex != -1) {
-            long enPassantStart;
-            if (state.whiteToMove) {
-                enPassantStart = BLACK_PAWN_POSSIBLE_CAPTURES[state.enPassantIndex];
-                if ((enPassantStart & ~RANK_5) != 0) {
-                    System.err.println("En-passant: " + state.enPassantIndex);
-                    throw new IllegalStateException("Invalid white en passant:\n" + longAsBitboard(enPassantStart, false));
-                }
-            } else {
-                enPassantStart = WHITE_PAWN_POSSIBLE_CAPTURES[state.enPassantIndex];
-                if ((enPassantStart & ~RANK_4) != 0) {
-                    System.err.println("En-passant: " + state.enPassantIndex);
-                    throw new IllegalStateException("Invalid black en passant:\n" + longAsBitboard(enPassantStart, false));
-                }
-            }
-
-            if (Long.bitCount(enPassantStart) > 2) {
-                throw new IllegalStateException("Invalid number of en passant moves");
-            }
-
-            enPassantStart &= friendlyPawns;
-            while (enPassantStart != 0) {
-                int start = Long.numberOfTrailingZeros(enPassantStart);
-                moves[index++] = new Move(start, state.enPassantIndex, Move.MoveType.EN_PASSANT, PAWN);
-                enPassantStart ^= SQUARE_TO_BITBOARD[start];
+            for (long starts = side.pawnAttackers[state.enPassantIndex] & pawns; starts != 0; starts &= starts - 1) {
+                moves[index++] = new Move(Long.numberOfTrailingZeros(starts), state.enPassantIndex,
+                        Move.MoveType.EN_PASSANT, PAWN);
             }
         }
+        return index;
+    }
 
-        // Pawn captures
-        while (friendlyPawns != 0) {
-            int start = Long.numberOfTrailingZeros(friendlyPawns);
-            long pawnMoves = (state.whiteToMove ? WHITE_PAWN_POSSIBLE_CAPTURES[start] & state.blackPieces :
-                    BLACK_PAWN_POSSIBLE_CAPTURES[start] & state.whitePieces);
-            if (Long.bitCount(pawnMoves) > 2) {
-                throw new IllegalStateException("Invalid number of pawn moves");
-            }
-
-            while (pawnMoves != 0) {
-                int end = Long.numberOfTrailingZeros(pawnMoves);
-                index = addPawnMove(moves, index, start, end, state.whiteToMove, false, state);
-                pawnMoves ^= SQUARE_TO_BITBOARD[end];
-            }
-            friendlyPawns ^= SQUARE_TO_BITBOARD[start];
+    /**
+     * @param ends   end squares of the pawn moves
+     * @param offset distance from the start to the end square of every move
+     */
+    private static int addPawnMoves(Move[] moves, int index, long ends, int offset, Move.MoveType moveType) {
+        for (; ends != 0; ends &= ends - 1) {
+            int end = Long.numberOfTrailingZeros(ends);
+            moves[index++] = new Move(end - offset, end, moveType, PAWN);
         }
-
         return index;
     }
 
-    private static int addPawnMove(Move[] moves, int index, int start, int end, boolean white,
-                                   boolean doubleMove, BitBoards state) {
-        boolean at_end = (white && end >= A8) || (!white && end <= H1);
-        if (at_end) {
+    private static int addPromotions(Move[] moves, int index, long ends, int offset) {
+        for (; ends != 0; ends &= ends - 1) {
+            int end = Long.numberOfTrailingZeros(ends);
             for (Move.MoveType moveType : Move.MoveType.PROMOTION_TYPES) {
-                moves[index++] = new Move(start, end, moveType, PAWN);
+                moves[index++] = new Move(end - offset, end, moveType, PAWN);
             }
-        } else {
-            moves[index++] = new Move(start, end, doubleMove ? Move.MoveType.PAWN_DOUBLE_MOVE :
-                    Move.MoveType.NORMAL, PAWN);
         }
-
         return index;
     }
 
     private static int generateRookMoves(BitBoards state, Move[] moves, int index,
-                                         long friendlyRooks, boolean fromQueen) {
-        long friendlyPieces = state.whiteToMove ? state.whitePieces : state.blackPieces;
-
-        while (friendlyRooks != 0) {
+                                         long friendlyRooks, boolean fromQueen, long targets) {
+        Move.PieceType pieceType = fromQueen ? QUEEN : ROOK;
+        for (; friendlyRooks != 0; friendlyRooks &= friendlyRooks - 1) {
             int start = Long.numberOfTrailingZeros(friendlyRooks);
-            long rookMoves = getRookAttacks(start, state.allPieces);
-            rookMoves &= ~friendlyPieces;
-            while (rookMoves != 0) {
-                int end = Long.numberOfTrailingZeros(rookMoves);
-                moves[index++] = new Move(start, end, Move.MoveType.NORMAL, fromQueen ? QUEEN : ROOK);
-                rookMoves ^= SQUARE_TO_BITBOARD[end];
+            for (long rookMoves = getRookAttacks(start, state.allPieces) & targets; rookMoves != 0;
+                 rookMoves &= rookMoves - 1) {
+                moves[index++] = new Move(start, Long.numberOfTrailingZeros(rookMoves), Move.MoveType.NORMAL, pieceType);
             }
-            friendlyRooks ^= SQUARE_TO_BITBOARD[start];
         }
 
         return index;
@@ -204,45 +224,31 @@ public class MoveGeneration {
     static long getRookAttacks(int rookIndex, long allPieces) {
         long blockers = allPieces & ROOK_BLOCKER_MASK[rookIndex];
         int index = (int) ((blockers * ROOK_MAGICS[rookIndex]) >>> (64 - ROOK_RELEVANT_BITS[rookIndex]));
-        return ROOK_ATTACKS[rookIndex][index];
+        return SliderAttacks.ATTACKS[SliderAttacks.ROOK_OFFSETS[rookIndex] + index];
     }
 
-    private static int generateKnightMoves(BitBoards state, Move[] moves, int index, long friendlyKnights) {
-        long friendlyPieces = state.whiteToMove ? state.whitePieces : state.blackPieces;
-
-        while (friendlyKnights != 0) {
+    private static int generateKnightMoves(Move[] moves, int index, long friendlyKnights, long targets) {
+        for (; friendlyKnights != 0; friendlyKnights &= friendlyKnights - 1) {
             int start = Long.numberOfTrailingZeros(friendlyKnights);
-            long knightMoves = KNIGHT_POSSIBLE_MOVES[start];
-            if (Long.bitCount(knightMoves) > 8) {
-                throw new IllegalStateException("Invalid number of knight moves");
+            for (long knightMoves = KNIGHT_POSSIBLE_MOVES[start] & targets; knightMoves != 0;
+                 knightMoves &= knightMoves - 1) {
+                moves[index++] = new Move(start, Long.numberOfTrailingZeros(knightMoves), Move.MoveType.NORMAL, KNIGHT);
             }
-
-            knightMoves &= ~friendlyPieces;
-            while (knightMoves != 0) {
-                int end = Long.numberOfTrailingZeros(knightMoves);
-                moves[index++] = new Move(start, end, Move.MoveType.NORMAL, KNIGHT);
-                knightMoves ^= SQUARE_TO_BITBOARD[end];
-            }
-            friendlyKnights ^= SQUARE_TO_BITBOARD[start];
         }
 
         return index;
     }
 
     private static int generateBishopMoves(BitBoards state, Move[] moves, int index,
-                                           long friendlyBishops, boolean fromQueen) {
-        long friendlyPieces = state.whiteToMove ? state.whitePieces : state.blackPieces;
-
-        while (friendlyBishops != 0) {
+                                           long friendlyBishops, boolean fromQueen, long targets) {
+        Move.PieceType pieceType = fromQueen ? QUEEN : BISHOP;
+        for (; friendlyBishops != 0; friendlyBishops &= friendlyBishops - 1) {
             int start = Long.numberOfTrailingZeros(friendlyBishops);
-            long bishopMoves = getBishopAttacks(start, state.allPieces);
-            bishopMoves &= ~friendlyPieces;
-            while (bishopMoves != 0) {
-                int end = Long.numberOfTrailingZeros(bishopMoves);
-                moves[index++] = new Move(start, end, Move.MoveType.NORMAL, fromQueen ? QUEEN : BISHOP);
-                bishopMoves ^= SQUARE_TO_BITBOARD[end];
+            for (long bishopMoves = getBishopAttacks(start, state.allPieces) & targets; bishopMoves != 0;
+                 bishopMoves &= bishopMoves - 1) {
+                moves[index++] = new Move(start, Long.numberOfTrailingZeros(bishopMoves), Move.MoveType.NORMAL,
+                        pieceType);
             }
-            friendlyBishops ^= SQUARE_TO_BITBOARD[start];
         }
 
         return index;
@@ -258,58 +264,37 @@ public class MoveGeneration {
     static long getBishopAttacks(int bishopIndex, long allPieces) {
         long relevantSquares = allPieces & BISHOP_BLOCKER_MASK[bishopIndex];
         int index = (int) ((relevantSquares * BISHOP_MAGICS[bishopIndex]) >>> (64 - BISHOP_RELEVANT_BITS[bishopIndex]));
-        return BISHOP_ATTACKS[bishopIndex][index];
+        return SliderAttacks.ATTACKS[SliderAttacks.BISHOP_OFFSETS[bishopIndex] + index];
     }
 
-    private static int generateQueenMoves(BitBoards state, Move[] moves, int index, long friendlyQueens) {
-        index = generateRookMoves(state, moves, index, friendlyQueens, true);
-        index = generateBishopMoves(state, moves, index, friendlyQueens, true);
+    private static int generateQueenMoves(BitBoards state, Move[] moves, int index, long friendlyQueens,
+                                          long targets) {
+        index = generateRookMoves(state, moves, index, friendlyQueens, true, targets);
+        index = generateBishopMoves(state, moves, index, friendlyQueens, true, targets);
 
         return index;
     }
 
-    private static int generateKingMoves(BitBoards state, Move[] moves, int index, long friendlyKing) {
+    private static int generateKingMoves(Move[] moves, int index, long friendlyKing, long targets) {
         if (Long.bitCount(friendlyKing) != 1) {
             throw new IllegalStateException("Invalid number of friendly kings");
         }
 
-        long friendlyPieces = state.whiteToMove ? state.whitePieces : state.blackPieces;
-
         int start = Long.numberOfTrailingZeros(friendlyKing);
-        long kingMoves = KING_POSSIBLE_MOVES[start];
-        kingMoves &= ~friendlyPieces;
-        while (kingMoves != 0) {
-            int end = Long.numberOfTrailingZeros(kingMoves);
-            moves[index++] = new Move(start, end, Move.MoveType.NORMAL, KING);
-            kingMoves ^= SQUARE_TO_BITBOARD[end];
+        for (long kingMoves = KING_POSSIBLE_MOVES[start] & targets; kingMoves != 0; kingMoves &= kingMoves - 1) {
+            moves[index++] = new Move(start, Long.numberOfTrailingZeros(kingMoves), Move.MoveType.NORMAL, KING);
         }
 
-        return generateCastlingMoves(state, moves, index);
+        return index;
     }
 
-    private static int generateCastlingMoves(BitBoards state, Move[] moves, int index) {
-        if (state.whiteToMove) {
-            // White king-side
-            if ((state.castleRights & 0b1) != 0 && (state.allPieces & WHITE_KING_RIGHT_CASTLE_OPEN) == 0) {
-                moves[index++] = new Move(WHITE_KING_START, 6, Move.MoveType.CASTLE_RIGHT,
-                        KING);
-            }
-            // White queen-side
-            if ((state.castleRights & 0b10) != 0 && (state.allPieces & WHITE_KiNG_LEFT_CASTLE_OPEN) == 0) {
-                moves[index++] = new Move(WHITE_KING_START, 2, Move.MoveType.CASTLE_LEFT,
-                        KING);
-            }
-        } else {
-            // Black king-side
-            if ((state.castleRights & 0b0100) != 0 && (state.allPieces & BLACK_KING_RIGHT_CASTLE_OPEN) == 0) {
-                moves[index++] = new Move(BLACK_KING_START, 62, Move.MoveType.CASTLE_RIGHT,
-                        KING);
-            }
-            // Black queen-side
-            if ((state.castleRights & 0b1000) != 0 && (state.allPieces & BLACK_KING_LEFT_CASTLE_OPEN) == 0) {
-                moves[index++] = new Move(BLACK_KING_START, 58, Move.MoveType.CASTLE_LEFT, KING);
-            }
+    private static int generateCastlingMoves(BitBoards state, Side side, Move[] moves, int index) {
+        if ((state.castleRights & side.kingSideRight) != 0 && (state.allPieces & side.kingSideOpen) == 0) {
+            moves[index++] = new Move(side.kingStart, side.kingStart + 2, Move.MoveType.CASTLE_RIGHT, KING);
+        }
+        if ((state.castleRights & side.queenSideRight) != 0 && (state.allPieces & side.queenSideOpen) == 0) {
+            moves[index++] = new Move(side.kingStart, side.kingStart - 2, Move.MoveType.CASTLE_LEFT, KING);
         }
         return index;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,201 @@
+package ai;
+
+import static ai.BitBoards.*;
+
+/**
+ * Hands out the pseudo-legal moves of a node one at a time in stages, so a node that is cut off
+ * by a capture or a killer move never generates its quiet moves
+ * <br>Stages: captures and queen promotions that don't lose material, most valuable victim
+ * first, then the killer moves, then the other quiet moves, and last the captures that lose
+ * material and the underpromotions
+ * <br>One picker is kept for every ply so its buffers are reused from node to node
+ */
+final class MovePicker {
+    private enum Stage {
+        CAPTURES, KILLERS, QUIETS, BAD_CAPTURES, DONE
+    }
+
+    private final Move[] moves = new Move[256];
+    // Ordering score of the captures in the buffer
+    private final int[] scores = new int[256];
+    // Material won by the captures in the buffer, before any recapture
+    private final int[] gains = new int[256];
+    private final Move[] badCaptures = new Move[256];
+
+    private BitBoards state;
+    private Move[] killers;
+    private boolean capturesOnly;
+    private Stage stage;
+    // Next and end index of the moves of the current stage
+    private int current, end;
+    private int badCount;
+    private int gain;
+    // Bit for each killer move that was picked, so the quiet moves stage skips it
+    private int pickedKillers;
+
+    /**
+     * Starts picking the moves of a node
+     *
+     * @param state        current state
+     * @param killers      killer moves of the ply, which may contain nulls
+     * @param capturesOnly whether to stop after the captures that don't lose material, for the
+     *                     quiescence search
+     */
+    void reset(BitBoards state, Move[] killers, boolean capturesOnly) {
+        this.state = state;
+        this.killers = killers;
+        this.capturesOnly = capturesOnly;
+        stage = Stage.CAPTURES;
+        badCount = 0;
+        pickedKillers = 0;
+        end = MoveGeneration.generateCaptures(state, moves, 0);
+        current = 0;
+        scoreCaptures();
+    }
+
+    /**
+     * @return the next pseudo-legal move, or null once every move has been picked
+     */
+    Move next() {
+        while (true) {
+            switch (stage) {
+                case CAPTURES -> {
+                    if (current < end) {
+                        pickBest();
+                        Move move = moves[current];
+                        gain = gains[current++];
+                        // Losing captures and underpromotions wait until after the quiet moves
+                        if (underpromotion(move) || StaticExchange.evaluate(state, move) < 0) {
+                            badCaptures[badCount++] = move;
+                            continue;
+                        }
+                        return move;
+                    }
+                    if (capturesOnly) {
+                        stage = Stage.DONE;
+                        return null;
+                    }
+                    stage = Stage.KILLERS;
+                    current = 0;
+                }
+                case KILLERS -> {
+                    while (current < killers.length) {
+                        Move killer = killers[current++];
+                        if (killer != null && MoveGeneration.isPseudoLegalQuiet(state, killer)) {
+                            pickedKillers |= 1 << (current - 1);
+                            return killer;
+                        }
+                    }
+                    stage = Stage.QUIETS;
+                    end = MoveGeneration.generateQuiets(state, moves, 0);
+                    current = 0;
+                }
+                case QUIETS -> {
+                    while (current < end) {
+                        Move move = moves[current++];
+                        if (!pickedKiller(move)) {
+                            return move;
+                        }
+                    }
+                    stage = Stage.BAD_CAPTURES;
+                    current = 0;
+                }
+                case BAD_CAPTURES -> {
+                    if (current < badCount) {
+                        return badCaptures[current++];
+                    }
+                    stage = Stage.DONE;
+                }
+                case DONE -> {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the material the last picked capture wins before any recapture
+     */
+    int gain() {
+        return gain;
+    }
+
+    /**
+     * @return whether the last picked move neither captures nor promotes, so it can become a killer move
+     */
+    boolean quiet() {
+        return stage == Stage.KILLERS || stage == Stage.QUIETS;
+    }
+
+    /**
+     * Most valuable victim first, and least valuable attacker first among equal victims
+     */
+    private void scoreCaptures() {
+        long enemyPieces = state.whiteToMove ? state.blackPieces : state.whitePieces;
+        for (int i = 0; i < end; i++) {
+            Move move = moves[i];
+            int victim;
+            if (move.moveType() == Move.MoveType.EN_PASSANT) {
+                victim = PAWN_VAL;
+            } else if ((enemyPieces & SQUARE_TO_BITBOARD[move.end()]) != 0) {
+                victim = StaticExchange.pieceValue(state, SQUARE_TO_BITBOARD[move.end()]);
+            } else {
+                victim = 0;
+            }
+            gains[i] = move.moveType() == Move.MoveType.PROMOTE_QUEEN ? victim + QUEEN_VAL - PAWN_VAL : victim;
+            scores[i] = gains[i] * 8 - attackerRank(move.pieceType());
+        }
+    }
+
+    private static int attackerRank(Move.PieceType pieceType) {
+        return switch (pieceType) {
+            case PAWN -> 0;
+            case KNIGHT -> 1;
+            case BISHOP -> 2;
+            case ROOK -> 3;
+            case QUEEN -> 4;
+            default -> 5;
+        };
+    }
+
+    /**
+     * Swaps the best scored of the remaining captures to the current index
+     */
+    private void pickBest() {
+        int best = current;
+        for (int i = current + 1; i < end; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        if (best != current) {
+            Move move = moves[best];
+            moves[best] = moves[current];
+            moves[current] = move;
+            int score = scores[best];
+            scores[best] = scores[current];
+            scores[current] = score;
+            int bestGain = gains[best];
+            gains[best] = gains[current];
+            gains[current] = bestGain;
+        }
+    }
+
+    private static boolean underpromotion(Move move) {
+        return move.moveType() == Move.MoveType.PROMOTE_ROOK || move.moveType() == Move.MoveType.PROMOTE_KNIGHT ||
+                move.moveType() == Move.MoveType.PROMOTE_BISHOP;
+    }
+
+    private boolean pickedKiller(Move move) {
+        for (int i = 0; i < killers.length; i++) {
+            if ((pickedKillers & 1 << i) != 0 && sameMove(killers[i], move)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean sameMove(Move a, Move b) {
+        return a.start() == b.start() && a.end() == b.end() && a.moveType() == b.moveType();
+    }
+}
@@ -1,79 +1,103 @@
 package ai;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 public class NegaMax {
-    private final HashMap<String, List<Move>> OPENING_BOOK = new HashMap<>();
+    private static final int DEFAULT_DEPTH = 4;
+    // Largest positional gain expected from a capture on top of the captured material
+    private static final int DELTA_MARGIN = 200;
+    // Mate scores are CHECKMATE_VAL plus the ply of the mate, so scores between these aren't mates
+    private static final int MATED_IN_MAX_PLY = BitBoards.CHECKMATE_VAL + SearchStats.MAX_PLY;
+    private static final int MATE_IN_MAX_PLY = -MATED_IN_MAX_PLY;
+    // Score of a won bitbase position at the root, less the ply it is found at, above every evaluation
+    private static final int BITBASE_WIN = MATE_IN_MAX_PLY - SearchStats.MAX_PLY;
+    // Largest score change expected from the remaining depth, indexed by depth, for the pruning near the leaves
+    private static final int[] REVERSE_FUTILITY_MARGIN = {0, 120, 240, 360};
+    private static final int[] FUTILITY_MARGIN = {0, 200, 350};
+    private static final int[] RAZOR_MARGIN = {0, 300, 500};
+    // Number of legal moves searched at a depth after which the remaining quiet moves are pruned
+    private static final int[] LATE_MOVE_COUNT = {0, 5, 8, 13};
     private final TranspositionTable TRANSPOSITION_TABLE = new TranspositionTable();
+    private final EngineConfig config;
+    // Completes with null if the book could not be loaded
+    private CompletableFuture<OpeningBook> openingBook;
+
+    // Per-search state, so an instance must only be used by one thread at a time
+    private final SearchStats stats = new SearchStats();
+    // Kept between searches since pawn structures repeat from move to move
+    private final PawnHashTable pawnTable = new PawnHashTable(PawnHashTable.DEFAULT_ENTRIES);
+    // Null if disabled, and may be shared with engines on other threads
+    private final EvalCache evalCache;
+    // Null if disabled, and completes with null if the bitbases could not be loaded
+    private final CompletableFuture<Bitbases> bitbases;
+    // Bitbases of the current search, null if there are none
+    private Bitbases loadedBitbases;
+    // Null if positions are evaluated by the hand-written terms
+    private final Nnue nnue;
+    // Move buffers of every ply, and two quiet moves per ply that recently caused a beta cutoff
+    private final MovePicker[] pickers = new MovePicker[SearchStats.MAX_PLY];
+    private final Move[][] killers = new Move[SearchStats.MAX_PLY][2];
+    private long nodeLimit;
+    private long deadline;
+    private boolean stopped;
 
     public NegaMax() {
-        parseOpeningBook();
+        this(new EngineConfig());
     }
 
-    private void parseOpeningBook() {
-        try (Scanner scanner = new Scanner(new File("src/ai/Computations/opening_book.txt"))) {
-            scanner.useDelimiter("pos ");
-            while (scanner.hasNextLine()) {
-                final String token = scanner.next();
-                if (token.startsWith("#") || token.isBlank()) {
-                    continue;
-                }
-
-                addPositionToBook(token);
-            }
-        } catch (FileNotFoundException e) {
-            System.err.println("Opening book not found: " + e.getMessage());
-        }
+    /**
+     * @param config engine settings, which are copied so later changes have no effect
+     */
+    public NegaMax(EngineConfig config) {
+        this(config, config.evalCacheMB == 0 ? null : new EvalCache(config.evalCacheMB));
     }
 
-    private void addPositionToBook(String token) {
-        try {
-            final Scanner scanner = new Scanner(token);
-            final String currentPosition = scanner.nextLine();
-            final List<Move> currentMoves = new ArrayList<>();
-
-            while (scanner.hasNextLine()) {
-                final String[] moveArgs = scanner.nextLine().split(" ");
-                int start = Move.notationToIndex(moveArgs[0].substring(0, 2));
-                int end = Move.notationToIndex(moveArgs[0].substring(2));
-                int value = Integer.parseInt(moveArgs[1]);
-                Move move = new Move(start, end, value);
-                currentMoves.add(move);
-            }
-
-            OPENING_BOOK.put(currentPosition, List.of(currentMoves.toArray(new Move[0])));
-        } catch (StringIndexOutOfBoundsException e) {
-            System.err.println("Opening book is malformed: " + e.getMessage());
+    /**
+     * @param config    engine settings, which are copied so later changes have no effect
+     * @param evalCache evaluation cache, which may be shared with engines on other threads, or null for none
+     */
+    NegaMax(EngineConfig config, EvalCache evalCache) {
+        this.config = config.copy();
+        this.evalCache = evalCache;
+        this.bitbases = this.config.bitbasePath.isEmpty() ? null :
+                Bitbases.load(this.config.bitbasePath, this.config.bitbases);
+        this.nnue = openNetwork(this.config.nnueFile);
+        for (int ply = 0; ply < pickers.length; ply++) {
+            pickers[ply] = new MovePicker();
+        }
+        if (this.config.useOpeningBook) {
+            openingBook = BookLoader.load(this.config.bookFile);
         }
     }
 
-    private String removeMoveCounter(String FEN) {
-        return FEN.substring(0, FEN.substring(0, FEN.lastIndexOf(' ')).lastIndexOf(' '));
-    }
-
+    /**
+     * @return a book move for the position chosen by the book policy, or null if it is not in
+     * the book, the game is past the book depth, or the book is not loaded yet
+     */
     private String checkOpeningBook(String FEN) {
-        // Opening moves
-        String bookKey = removeMoveCounter(FEN);
-        // System.out.println("Key: " + bookKey);
-        if (OPENING_BOOK.containsKey(bookKey)) {
-            List<Move> moves = OPENING_BOOK.get(bookKey);
-            Move move = moves.get((int) (Math.random() * moves.size()));
-            return Move.indexToNotation(move.start()) + Move.indexToNotation(move.end());
-        } else if (!bookKey.endsWith("-")) {
-            bookKey = bookKey.substring(0, bookKey.lastIndexOf(' ')) + " -";
-            if (OPENING_BOOK.containsKey(bookKey)) {
-                List<Move> moves = OPENING_BOOK.get(bookKey);
-                Move move = moves.get((int) (Math.random() * moves.size()));
-                return Move.indexToNotation(move.start()) + Move.indexToNotation(move.end());
-            }
+        // Searches instead of waiting for the book
+        OpeningBook book = openingBook == null ? null : openingBook.getNow(null);
+        if (book == null) {
+            return null;
         }
-
-        return null;
+        BitBoards state = new BitBoards(FEN);
+        int ply = 2 * (state.moveCounter - 1) + (state.whiteToMove ? 0 : 1);
+        if (config.bookDepth != 0 && ply >= config.bookDepth) {
+            return null;
+        }
+        List<OpeningBook.Entry> moves = book.probe(state);
+        if (moves.isEmpty()) {
+            return null;
+        }
+        return OpeningBook.choose(moves, config.bookPolicy, ThreadLocalRandom.current()).notation();
     }
 
     /**
@@ -83,41 +107,233 @@ public class NegaMax {
      * @return the best move NOT in algebraic notation. Format: "a1a2 T"
      */
     public String getBestMove(String FEN) {
+        BookProbeEvent probe = new BookProbeEvent();
+        probe.begin();
         String openingMove = checkOpeningBook(FEN);
+        if (config.useOpeningBook && probe.shouldCommit()) {
+            probe.fen = FEN;
+            probe.hit = openingMove != null;
+            probe.move = openingMove;
+            probe.commit();
+        }
         if (openingMove != null) {
             return openingMove;
         }
-        BitBoards state = new BitBoards(FEN);
-        Move bestMove = rootNegaMax(state, state.whiteToMove);
+        String bestMove = search(FEN, SearchLimits.depth(DEFAULT_DEPTH)).bestMove();
         if (bestMove == null) {
             throw new IllegalStateException("No move found");
         }
-        return bestMove.toString();
+        return bestMove;
     }
 
     /**
-     * Recursive minimax algorithm
+     * Searches the position without the opening book using iterative deepening until one of
+     * the limits is reached
      *
-     * @return the best move
+     * @param FEN    string encoding current board position
+     * @param limits when to stop searching
+     * @return the best move of the deepest completed iteration
      */
-    private Move rootNegaMax(BitBoards state, boolean color) {
-        final int INITIAL_DEPTH = 4;
-        // So negation doesn't overflow
-        int alpha = Integer.MIN_VALUE + 1, beta = Integer.MAX_VALUE - 1;
+    public SearchResult search(String FEN, SearchLimits limits) {
+        return search(FEN, limits, iteration -> {
+        });
+    }
+
+    /**
+     * Searches the position without the opening book using iterative deepening until one of
+     * the limits is reached
+     *
+     * @param FEN        string encoding current board position
+     * @param limits     when to stop searching
+     * @param iterations receives the result of every completed iteration
+     * @return the best move of the deepest completed iteration
+     */
+    public SearchResult search(String FEN, SearchLimits limits, Consumer<SearchResult> iterations) {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        final long startTime = System.nanoTime();
+        BitBoards state = new BitBoards(FEN);
+        stats.reset();
+        pawnTable.probes = pawnTable.hits = 0;
+        nodeLimit = limits.nodes() == 0 ? Long.MAX_VALUE : limits.nodes();
+        deadline = limits.timeMillis() == 0 ? Long.MAX_VALUE :
+                startTime + limits.timeMillis() * 1_000_000;
+        stopped = false;
+        // Searches without the bitbases until they are loaded
+        loadedBitbases = bitbases == null ? null : bitbases.getNow(null);
+        for (Move[] plyKillers : killers) {
+            Arrays.fill(plyKillers, null);
+        }
 
         Move[] allMoves = MoveGeneration.generateLegalMoves(state);
         if (allMoves.length == 0) {
+            return finish(event, limits, new SearchResult(FEN, null, state.evaluateBoard(allMoves, pawnTable), 0, 0,
+                    (System.nanoTime() - startTime) / 1_000_000, statsSnapshot()));
+        }
+
+        Move bestMove = null;
+        int completedDepth = 0;
+        for (int depth = 1; depth <= limits.maxDepth(); depth++) {
+            IterationEvent iterationEvent = new IterationEvent();
+            iterationEvent.begin();
+            Move move = rootNegaMax(state, allMoves, depth);
+            if (stopped) {
+                // Moves searched before stopping are exact, so they are only used if nothing else is known
+                if (bestMove == null && move.start() != -1) {
+                    bestMove = move;
+                }
+                break;
+            }
+            bestMove = move;
+            completedDepth = depth;
+            moveToFront(allMoves, bestMove);
+            long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+            stats.iteration(depth, elapsedMillis);
+            stats.timeMillis = elapsedMillis;
+            if (iterationEvent.shouldCommit()) {
+                iterationEvent.depth = depth;
+                iterationEvent.bestMove = bestMove.toString();
+                iterationEvent.score = bestMove.value();
+                iterationEvent.nodes = stats.nodes;
+                iterationEvent.nodesPerSecond = Math.round(stats.nodesPerSecond());
+                iterationEvent.commit();
+            }
+            iterations.accept(new SearchResult(FEN, bestMove.toString(), bestMove.value(), depth, stats.nodes,
+                    elapsedMillis, statsSnapshot()));
+        }
+        if (bestMove == null) {
+            bestMove = allMoves[0];
+        }
+        stats.timeMillis = (System.nanoTime() - startTime) / 1_000_000;
+        return finish(event, limits, new SearchResult(FEN, bestMove.toString(), bestMove.value(), completedDepth,
+                stats.nodes, stats.timeMillis, statsSnapshot()));
+    }
+
+    /**
+     * @return a copy of the statistics including the counters kept by the pawn hash table
+     */
+    private SearchStats statsSnapshot() {
+        stats.pawnProbes = pawnTable.probes;
+        stats.pawnHits = pawnTable.hits;
+        return stats.copy();
+    }
+
+    /**
+     * Commits the flight recorder event and writes the result to the statistics log if there is one
+     */
+    private SearchResult finish(SearchEvent event, SearchLimits limits, SearchResult result) {
+        if (event.shouldCommit()) {
+            event.fen = result.FEN();
+            event.depthLimit = limits.depth();
+            event.nodeLimit = limits.nodes();
+            event.timeLimit = limits.timeMillis();
+            event.bestMove = result.bestMove();
+            event.score = result.score();
+            event.depth = result.depth();
+            event.nodes = result.nodes();
+            event.nodesPerSecond = Math.round(result.stats().nodesPerSecond());
+            event.commit();
+        }
+        if (!config.statsLog.isEmpty()) {
+            String line = String.format("{\"fen\":\"%s\",\"bestMove\":%s,\"score\":%d,\"depth\":%d,\"stats\":%s}%n",
+                    result.FEN(), result.bestMove() == null ? "null" : "\"" + result.bestMove() + "\"",
+                    result.score(), result.depth(), result.stats().toJSON());
+            // Engines on other threads may log to the same file
+            synchronized (NegaMax.class) {
+                try {
+                    Files.writeString(Path.of(config.statsLog), line, StandardOpenOption.CREATE,
+                            StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    System.err.println("Could not write search statistics: " + e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param nnueFile network file, or empty for none
+     * @return an evaluator for the network, or null if there is none or it could not be loaded
+     */
+    private static Nnue openNetwork(String nnueFile) {
+        if (nnueFile.isEmpty()) {
             return null;
         }
+        try {
+            return new Nnue(NnueNetwork.open(Path.of(nnueFile)), NnueKernels.best());
+        } catch (IOException e) {
+            System.err.println("Network not loaded: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return static score from the perspective of the side to move, from the network if there is one
+     */
+    private int evaluate(BitBoards state, int alpha, int beta) {
+        if (nnue != null) {
+            ++stats.evaluations;
+            return nnue.evaluate(state);
+        }
+        return state.staticEvaluation(pawnTable, evalCache, alpha, beta, stats);
+    }
+
+    /**
+     * Searches the best move of the previous iteration first
+     */
+    private static void moveToFront(Move[] allMoves, Move bestMove) {
+        for (int i = 0; i < allMoves.length; i++) {
+            Move move = allMoves[i];
+            if (move.start() == bestMove.start() && move.end() == bestMove.end() && move.moveType() == bestMove.moveType()) {
+                System.arraycopy(allMoves, 0, allMoves, 1, i);
+                allMoves[0] = move;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if the search has to stop because of the node or time limit
+     */
+    private boolean outOfLimits() {
+        if (!stopped && (stats.nodes >= nodeLimit || ((stats.nodes & 1023) == 0 && System.nanoTime() >= deadline))) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    /**
+     * Recursive minimax algorithm
+     *
+     * @param state    current state
+     * @param allMoves legal moves of the current state, not empty
+     * @param depth    depth to search
+     * @return the best move, which is an error move if the search stopped before any move was searched
+     */
+    private Move rootNegaMax(BitBoards state, Move[] allMoves, int depth) {
+        boolean color = state.whiteToMove;
+        // So negation doesn't overflow
+        int alpha = Integer.MIN_VALUE + 1, beta = Integer.MAX_VALUE - 1;
+
+        stats.node(0);
         Move bestMove = new Move();
-        for (Move move : allMoves) {
-            int value = -negaMax(state.tryMove(move), INITIAL_DEPTH - 1, -beta, -alpha, !color);
+        boolean singleReply = allMoves.length == 1 && state.inCheck();
+        for (int i = 0; i < allMoves.length; i++) {
+            Move move = allMoves[i];
+            BitBoards child = state.tryMove(move);
+            // The depth of the iteration is also the extension budget of every path
+            int extension = extension(child, move, singleReply, child.inCheck(), depth);
+            int value = -negaMax(child, depth - 1 + extension, 1, -beta, -alpha, !color, depth - extension);
+            if (stopped) {
+                break;
+            }
             if (value > bestMove.value()) {
                 bestMove = new Move(move.start(), move.end(), move.moveType(),
                         move.pieceType(), value);
             }
             alpha = Math.max(value, alpha);
             if (alpha >= beta) {
+                stats.betaCutoff(i);
                 break;
             }
         }
@@ -127,28 +343,280 @@ public class NegaMax {
     /**
      * Recursive negamax algorithm
      *
+     * <br>Near the leaves, positions far outside the window and quiet moves that can't reach it
+     * are pruned, each by a technique that can be turned off in the {@link EngineConfig}:
+     * reverse futility pruning returns when the static score beats beta by a margin, razoring
+     * drops into the quiescence search when it is a margin below alpha, futility pruning skips
+     * quiet moves when the static score is a margin below alpha, and late move pruning skips the
+     * quiet moves after the first few
+     *
+     * @param state           current state
+     * @param depth           current depth
+     * @param ply             distance from the root
+     * @param alpha           minimum score
+     * @param beta            maximum score
+     * @param color           color to move
+     * @param extensionBudget number of plies the moves of the rest of the path may still be extended by
+     * @return the best score
+     */
+    private int negaMax(BitBoards state, int depth, int ply, int alpha, int beta, boolean color,
+                        int extensionBudget) {
+        stats.node(ply);
+        if (outOfLimits()) {
+            return 0;
+        }
+
+        if (depth == 0) {
+            return quiescence(state, ply, alpha, beta);
+        }
+        if (state.drawnByRule()) {
+            return 0;
+        }
+
+        if (ply >= SearchStats.MAX_PLY - 1) {
+            return evaluate(state, alpha, beta);
+        }
+
+        if (loadedBitbases != null && state.halfMoveClock == 0 && state.castleRights == 0 &&
+                Long.bitCount(state.allPieces) <= loadedBitbases.maxPieces()) {
+            int result = loadedBitbases.probe(state);
+            if (result != -1) {
+                ++stats.tbHits;
+                return switch (result) {
+                    case Bitbase.WIN -> BITBASE_WIN - ply;
+                    case Bitbase.LOSS -> -BITBASE_WIN + ply;
+                    default -> 0;
+                };
+            }
+        }
+
+        // Mate distance pruning: no line from here can beat being mated right now, or mating on the next move
+        alpha = Math.max(alpha, BitBoards.CHECKMATE_VAL + ply);
+        beta = Math.min(beta, -(BitBoards.CHECKMATE_VAL + ply + 1));
+        if (alpha >= beta) {
+            return alpha;
+        }
+
+        boolean inCheck = state.inCheck();
+        // Only worth generating the legal moves when the single one would be extended
+        boolean singleReply = inCheck && extensionBudget > 0 && MoveGeneration.generateLegalMoves(state).length == 1;
+
+        boolean futile = false;
+        int futilityValue = Integer.MIN_VALUE;
+        if ((config.reverseFutilityPruning || config.razoring || config.futilityPruning) && !inCheck &&
+                depth < REVERSE_FUTILITY_MARGIN.length && alpha > MATED_IN_MAX_PLY && beta < MATE_IN_MAX_PLY) {
+            int staticScore = evaluate(state, alpha, beta);
+            if (config.reverseFutilityPruning && staticScore - REVERSE_FUTILITY_MARGIN[depth] >= beta) {
+                ++stats.prunedNodes;
+                return staticScore - REVERSE_FUTILITY_MARGIN[depth];
+            }
+            if (config.razoring && depth < RAZOR_MARGIN.length && staticScore + RAZOR_MARGIN[depth] <= alpha) {
+                int value = quiescence(state, ply, alpha, beta);
+                if (value <= alpha) {
+                    ++stats.prunedNodes;
+                    return value;
+                }
+            }
+            if (config.futilityPruning && depth < FUTILITY_MARGIN.length) {
+                futilityValue = staticScore + FUTILITY_MARGIN[depth];
+                futile = futilityValue <= alpha;
+            }
+        }
+        boolean lateMovePruning = config.lateMovePruning && !inCheck && depth < LATE_MOVE_COUNT.length &&
+                alpha > MATED_IN_MAX_PLY;
+
+        // Legality is only checked when a move is searched, so moves after a cutoff never are
+        MovePicker picker = pickers[ply];
+        picker.reset(state, killers[ply], false);
+        int bestValue = Integer.MIN_VALUE;
+        int legalMoves = 0;
+        for (Move move = picker.next(); move != null; move = picker.next()) {
+            BitBoards child = Move.tryLegal(state, move);
+            if (child == null) {
+                continue;
+            }
+            ++legalMoves;
+            boolean givesCheck = child.inCheck();
+            // Only once a move was searched, so a pruned node never looks like a mate
+            if (legalMoves > 1 && picker.quiet() && !givesCheck) {
+                if (futile) {
+                    ++stats.prunedMoves;
+                    bestValue = Math.max(bestValue, futilityValue);
+                    continue;
+                }
+                if (lateMovePruning && legalMoves > LATE_MOVE_COUNT[depth]) {
+                    ++stats.prunedMoves;
+                    continue;
+                }
+            }
+            int extension = extension(child, move, singleReply, givesCheck, extensionBudget);
+            int value = -negaMax(child, depth - 1 + extension, ply + 1, -beta, -alpha, !color,
+                    extensionBudget - extension);
+            if (stopped) {
+                return 0;
+            }
+            bestValue = Math.max(bestValue, value);
+            alpha = Math.max(alpha, value);
+            if (alpha >= beta) {
+                stats.betaCutoff(legalMoves - 1);
+                if (picker.quiet()) {
+                    storeKiller(ply, move);
+                }
+                break;
+            }
+        }
+        if (legalMoves == 0) {
+            return inCheck ? BitBoards.CHECKMATE_VAL + ply : 0;
+        }
+        return bestValue;
+    }
+
+    /**
+     * Searches only captures and queen promotions until the position is quiet, so the horizon
+     * doesn't fall in the middle of an exchange, except that a side in check searches all its
+     * evasions, see {@link #evasions(BitBoards, int, int, int)}
+     *
+     * <br>Legal moves are only generated when in check, so a stalemate at the horizon is evaluated
+     * like any other position
+     *
      * @param state current state
-     * @param depth current depth
+     * @param ply   distance from the root
      * @param alpha minimum score
      * @param beta  maximum score
-     * @param color color to move
-     * @return the best score
+     * @return the best score of standing pat or capturing, or of the evasions when in check
      */
-    private int negaMax(BitBoards state, int depth, int alpha, int beta, boolean color) {
-        Move[] allMoves = MoveGeneration.generateLegalMoves(state);
-        if (depth == 0 || allMoves.length == 0) {
-            return state.evaluateBoard(allMoves);
+    private int quiescence(BitBoards state, int ply, int alpha, int beta) {
+        if (state.drawnByRule()) {
+            return 0;
+        }
+        if (state.inCheck()) {
+            return evasions(state, ply, alpha, beta);
+        }
+        int standPat = evaluate(state, alpha, beta);
+        if (standPat >= beta) {
+            return standPat;
+        }
+        if (ply >= SearchStats.MAX_PLY - 1) {
+            return standPat;
         }
+        alpha = Math.max(alpha, standPat);
 
-        int bestValue = Integer.MIN_VALUE;
-        for (Move move : allMoves) {
-            int value = -negaMax(state.tryMove(move), depth - 1, -beta, -alpha, !color);
+        int bestValue = standPat;
+        int searched = 0;
+        // Captures that lose material are never picked
+        MovePicker picker = pickers[ply];
+        picker.reset(state, killers[ply], true);
+        for (Move capture = picker.next(); capture != null; capture = picker.next()) {
+            // Delta pruning: even winning the material for free can't raise the score to alpha
+            if (standPat + picker.gain() + DELTA_MARGIN <= alpha) {
+                break;
+            }
+            BitBoards child = Move.tryLegal(state, capture);
+            if (child == null) {
+                continue;
+            }
+            stats.node(ply + 1);
+            ++stats.qnodes;
+            if (outOfLimits()) {
+                return 0;
+            }
+            int value = -quiescence(child, ply + 1, -beta, -alpha);
+            if (stopped) {
+                return 0;
+            }
+            bestValue = Math.max(bestValue, value);
+            alpha = Math.max(alpha, value);
+            if (alpha >= beta) {
+                stats.betaCutoff(searched);
+                break;
+            }
+            ++searched;
+        }
+        return bestValue;
+    }
+
+    /**
+     * Searches every legal reply to a check in the quiescence search, quiet moves included, since
+     * the side in check can't stand pat and a capture may not be its best defence
+     *
+     * @return the score of the best evasion, or the mate score if there is none
+     */
+    private int evasions(BitBoards state, int ply, int alpha, int beta) {
+        Move[] evasions = MoveGeneration.generateLegalMoves(state);
+        if (evasions.length == 0) {
+            return BitBoards.CHECKMATE_VAL + ply;
+        }
+        if (ply >= SearchStats.MAX_PLY - 1) {
+            return evaluate(state, alpha, beta);
+        }
+
+        int bestValue = BitBoards.CHECKMATE_VAL + ply;
+        int searched = 0;
+        for (Move evasion : evasions) {
+            stats.node(ply + 1);
+            ++stats.qnodes;
+            if (outOfLimits()) {
+                return 0;
+            }
+            int value = -quiescence(state.tryMove(evasion), ply + 1, -beta, -alpha);
+            if (stopped) {
+                return 0;
+            }
             bestValue = Math.max(bestValue, value);
             alpha = Math.max(alpha, value);
             if (alpha >= beta) {
+                stats.betaCutoff(searched);
                 break;
             }
+            ++searched;
         }
         return bestValue;
     }
+
+    /**
+     * Searches forcing moves one ply deeper, so the horizon doesn't fall in the middle of them:
+     * moves that give check, the only legal reply to a check, and pushes of passed pawns to the
+     * sixth or seventh rank
+     *
+     * @param child           state after the move
+     * @param move            move that was made
+     * @param singleReply     whether the move is the only legal move of a side in check
+     * @param givesCheck      whether the move gives check
+     * @param extensionBudget number of plies the path may still be extended by
+     * @return number of plies to extend the move by, 0 or 1
+     */
+    private int extension(BitBoards child, Move move, boolean singleReply, boolean givesCheck, int extensionBudget) {
+        if (extensionBudget <= 0) {
+            return 0;
+        }
+        if (singleReply || givesCheck || passedPawnPush(child, move)) {
+            ++stats.extensions;
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @param child state after the move, so the pawn belongs to the side not to move
+     */
+    private static boolean passedPawnPush(BitBoards child, Move move) {
+        if (move.pieceType() != Move.PieceType.PAWN) {
+            return false;
+        }
+        boolean white = !child.whiteToMove;
+        int rank = white ? move.end() >>> 3 : 7 - (move.end() >>> 3);
+        return (rank == 5 || rank == 6) &&
+                PawnStructure.passed(move.end(), white, white ? child.blackPawns : child.whitePawns);
+    }
+
+    /**
+     * Keeps the two most recent distinct quiet moves that caused a beta cutoff at the ply
+     */
+    private void storeKiller(int ply, Move move) {
+        Move[] plyKillers = killers[ply];
+        if (plyKillers[0] == null || !MovePicker.sameMove(plyKillers[0], move)) {
+            plyKillers[1] = plyKillers[0];
+            plyKillers[0] = move;
+        }
+    }
 }
@@ -0,0 +1,166 @@
+package ai;
+
+import static ai.NnueNetwork.*;
+
+/**
+ * Evaluates positions with a {@link NnueNetwork}
+ * <br>The first layer is the expensive one, so its output, the accumulator of each side, is kept
+ * with the position and updated from the closest ancestor that has one: a move only adds and
+ * subtracts the weights of the two or three features it changes. Since moves are made by copying
+ * the position, there is nothing to undo, and positions that are only made to test a move for
+ * legality or are pruned before they are evaluated never pay for the update. A side whose king
+ * moved, or with no evaluated ancestor close by, is computed from all pieces
+ * <br>Not thread-safe, every engine has its own instance, while the network is shared
+ */
+final class Nnue {
+    // Activations of the first and hidden layers are clipped to 0..ACTIVATION_MAX
+    static final int ACTIVATION_MAX = 127;
+    // Right shift of the sums of the hidden layers, so a weight of 64 passes its input on unchanged
+    static final int WEIGHT_SHIFT = 6;
+    // Output units per centipawn
+    static final int OUTPUT_SCALE = 16;
+    // Number of moves an accumulator is updated across before computing it from all pieces is cheaper
+    static final int MAX_UPDATE_DISTANCE = 6;
+
+    /**
+     * Outputs of the first layer for the pieces seen from each king
+     */
+    static final class Accumulator {
+        final short[] white = new short[L1];
+        final short[] black = new short[L1];
+    }
+
+    private final NnueNetwork network;
+    private final NnueKernels kernels;
+    // Layer outputs of the current evaluation
+    private final int[] input = new int[2 * L1];
+    private final int[] hidden1 = new int[L2];
+    private final int[] hidden2 = new int[L3];
+    private final int[] output = new int[1];
+
+    /**
+     * @param network weights, which may be shared with other instances
+     * @param kernels arithmetic to evaluate with, see {@link NnueKernels#best}
+     */
+    Nnue(NnueNetwork network, NnueKernels kernels) {
+        this.network = network;
+        this.kernels = kernels;
+    }
+
+    /**
+     * @return score in centipawns from the perspective of the side to move
+     */
+    int evaluate(BitBoards state) {
+        Accumulator accumulator = accumulator(state);
+        // The side to move comes first, so the network learns the value of having the move
+        kernels.clip(state.whiteToMove ? accumulator.white : accumulator.black, ACTIVATION_MAX, input, 0);
+        kernels.clip(state.whiteToMove ? accumulator.black : accumulator.white, ACTIVATION_MAX, input, L1);
+        kernels.dense(input, network.hidden1Weights, network.hidden1Biases, hidden1);
+        activate(hidden1);
+        kernels.dense(hidden1, network.hidden2Weights, network.hidden2Biases, hidden2);
+        activate(hidden2);
+        kernels.dense(hidden2, network.outputWeights, network.outputBias, output);
+        return output[0] / OUTPUT_SCALE;
+    }
+
+    private static void activate(int[] sums) {
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] = Math.clamp(sums[i] >> WEIGHT_SHIFT, 0, ACTIVATION_MAX);
+        }
+    }
+
+    /**
+     * @return the accumulator of the state, which is computed the first time
+     */
+    Accumulator accumulator(BitBoards state) {
+        if (state.accumulator != null) {
+            return state.accumulator;
+        }
+        BitBoards ancestor = state.parent();
+        for (int distance = 1; ancestor != null && ancestor.accumulator == null && distance < MAX_UPDATE_DISTANCE;
+             distance++) {
+            ancestor = ancestor.parent();
+        }
+        Accumulator accumulator = new Accumulator();
+        for (boolean white : new boolean[]{true, false}) {
+            short[] side = white ? accumulator.white : accumulator.black;
+            if (ancestor != null && ancestor.accumulator != null && king(ancestor, white) == king(state, white)) {
+                System.arraycopy(white ? ancestor.accumulator.white : ancestor.accumulator.black, 0, side, 0, L1);
+                update(ancestor, state, white, side);
+            } else {
+                refresh(state, white, side);
+            }
+        }
+        state.accumulator = accumulator;
+        return accumulator;
+    }
+
+    /**
+     * Computes the accumulator of one side from all pieces
+     *
+     * @param white whether the side is white
+     */
+    void refresh(BitBoards state, boolean white, short[] accumulator) {
+        System.arraycopy(network.featureBiases, 0, accumulator, 0, L1);
+        int king = king(state, white);
+        for (int kind = 0; kind < PIECE_KINDS; kind++) {
+            for (long pieces = pieces(state, white, kind); pieces != 0; pieces &= pieces - 1) {
+                kernels.add(accumulator, network.featureWeights,
+                        feature(white, king, kind, Long.numberOfTrailingZeros(pieces)) * L1);
+            }
+        }
+    }
+
+    /**
+     * Changes the accumulator of one side of an earlier position by the pieces that moved,
+     * appeared or disappeared since, where the king of the side is on the same square in both
+     */
+    private void update(BitBoards earlier, BitBoards state, boolean white, short[] accumulator) {
+        int king = king(state, white);
+        for (int kind = 0; kind < PIECE_KINDS; kind++) {
+            long before = pieces(earlier, white, kind), after = pieces(state, white, kind);
+            for (long removed = before & ~after; removed != 0; removed &= removed - 1) {
+                kernels.subtract(accumulator, network.featureWeights,
+                        feature(white, king, kind, Long.numberOfTrailingZeros(removed)) * L1);
+            }
+            for (long added = after & ~before; added != 0; added &= added - 1) {
+                kernels.add(accumulator, network.featureWeights,
+                        feature(white, king, kind, Long.numberOfTrailingZeros(added)) * L1);
+            }
+        }
+    }
+
+    /**
+     * Squares are seen from the side, so black's are mirrored and both sides share the weights
+     *
+     * @param white whether the features are seen from white's king
+     * @param king  square of the king of the side, as returned by {@link #king}
+     * @param kind  own pawns, knights, bishops, rooks and queens, then the enemy's
+     * @return index of the feature
+     */
+    static int feature(boolean white, int king, int kind, int square) {
+        return (king * PIECE_KINDS + kind) * 64 + (white ? square : square ^ 56);
+    }
+
+    /**
+     * @return square of the king of the side, mirrored for black
+     */
+    static int king(BitBoards state, boolean white) {
+        return white ? Long.numberOfTrailingZeros(state.whiteKing) : Long.numberOfTrailingZeros(state.blackKing) ^ 56;
+    }
+
+    /**
+     * @param white whether the pieces are seen from white's side
+     * @param kind  piece kind, see {@link #feature}
+     */
+    private static long pieces(BitBoards state, boolean white, int kind) {
+        boolean whitePieces = white == kind < 5;
+        return switch (kind % 5) {
+            case 0 -> whitePieces ? state.whitePawns : state.blackPawns;
+            case 1 -> whitePieces ? state.whiteKnights : state.blackKnights;
+            case 2 -> whitePieces ? state.whiteBishops : state.blackBishops;
+            case 3 -> whitePieces ? state.whiteRooks : state.blackRooks;
+            default -> whitePieces ? state.whiteQueens : state.blackQueens;
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package ai;
+
+/**
+ * Vector arithmetic of the network, with a SIMD implementation when it is compiled from the vector
+ * source root and the jdk.incubator.vector module is added to the JVM, and a scalar one otherwise
+ */
+interface NnueKernels {
+    /**
+     * Adds the weights of a feature to an accumulator
+     *
+     * @param offset index of the first weight of the feature
+     */
+    void add(short[] accumulator, short[] weights, int offset);
+
+    /**
+     * Subtracts the weights of a feature from an accumulator
+     *
+     * @param offset index of the first weight of the feature
+     */
+    void subtract(short[] accumulator, short[] weights, int offset);
+
+    /**
+     * Clips an accumulator to the activations 0..max of the inputs of the next layer
+     *
+     * @param offset index of the first input of the accumulator
+     */
+    void clip(short[] accumulator, int max, int[] inputs, int offset);
+
+    /**
+     * A dense layer: outputs[o] = biases[o] + the sum of inputs[i] * weights[o * inputs.length + i]
+     */
+    void dense(int[] inputs, int[] weights, int[] biases, int[] outputs);
+
+    /**
+     * @return the SIMD kernels if the Vector API is available, and the scalar kernels otherwise
+     */
+    static NnueKernels best() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // Loaded by name, so nothing links against the incubator module unless it is there
+                return (NnueKernels) Class.forName("ai.VectorNnueKernels").getDeclaredConstructor().newInstance();
+            } catch (ClassNotFoundException e) {
+                System.err.println("SIMD network kernels not compiled, using scalar network kernels");
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("Vector API not usable, using scalar network kernels: " + e);
+            }
+        }
+        return new ScalarNnueKernels();
+    }
+}
@@ -0,0 +1,202 @@
+package ai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Weights of an efficiently updatable neural network: HalfKP-like features of every non-king
+ * piece relative to the king of each side, a first layer of {@link #L1} neurons per side that
+ * {@link Nnue} keeps up to date from move to move, and two small dense layers to the score
+ * <br>No trained network ships with the engine. {@link #random} makes one with random weights,
+ * which plays badly but has the cost of a real one
+ * <br>Usage: java ai.NnueNetwork out.nnue [seed], which writes a random network
+ * <br>Format: an 8-byte magic number, the number of features and of neurons of each layer as
+ * 32-bit ints, then the biases and weights of the feature layer, the two hidden layers and the
+ * output, biases of the dense layers as 32-bit ints and everything else as 16-bit ints, all big-endian
+ */
+public final class NnueNetwork {
+    static final long MAGIC = 0x4E4E554530303031L; // "NNUE0001"
+    // Own and enemy pawns, knights, bishops, rooks and queens
+    static final int PIECE_KINDS = 10;
+    static final int FEATURES = 64 * PIECE_KINDS * 64;
+    static final int L1 = 256, L2 = 32, L3 = 32;
+    static final int HEADER_SIZE = Long.BYTES + 4 * Integer.BYTES;
+    static final long SIZE = HEADER_SIZE + Short.BYTES * (L1 + (long) FEATURES * L1) +
+            Integer.BYTES * L2 + Short.BYTES * (long) L2 * 2 * L1 +
+            Integer.BYTES * L3 + Short.BYTES * (long) L3 * L2 +
+            Integer.BYTES + Short.BYTES * (long) L3;
+
+    // Every file is loaded once and shared by all engines that use it
+    private static final Map<Path, NnueNetwork> LOADED = new ConcurrentHashMap<>();
+
+    // Indexed by feature, then by neuron
+    final short[] featureWeights;
+    final short[] featureBiases;
+    // Indexed by output neuron, then by input, widened from 16 bits when loaded
+    final int[] hidden1Weights, hidden1Biases;
+    final int[] hidden2Weights, hidden2Biases;
+    final int[] outputWeights, outputBias;
+
+    private NnueNetwork(short[] featureWeights, short[] featureBiases, int[] hidden1Weights, int[] hidden1Biases,
+                        int[] hidden2Weights, int[] hidden2Biases, int[] outputWeights, int[] outputBias) {
+        this.featureWeights = featureWeights;
+        this.featureBiases = featureBiases;
+        this.hidden1Weights = hidden1Weights;
+        this.hidden1Biases = hidden1Biases;
+        this.hidden2Weights = hidden2Weights;
+        this.hidden2Biases = hidden2Biases;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java ai.NnueNetwork out.nnue [seed]");
+            System.exit(1);
+        }
+        Path out = Path.of(args[0]);
+        random(args.length > 1 ? Long.parseLong(args[1]) : 1).write(out);
+        System.out.printf("Wrote a random network into %s (%d bytes)%n", out, Files.size(out));
+    }
+
+    /**
+     * @param file network file
+     * @return the network, shared with every other caller that opened the same file
+     * @throws IOException if the file can't be read or is not a network of this architecture
+     */
+    static NnueNetwork open(Path file) throws IOException {
+        try {
+            return LOADED.computeIfAbsent(file.toAbsolutePath().normalize(), key -> {
+                try {
+                    return load(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static NnueNetwork load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != SIZE) {
+                throw new IOException("Not a network of this architecture: " + file + " has " + channel.size() +
+                        " bytes");
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, SIZE);
+            if (data.getLong() != MAGIC || data.getInt() != FEATURES || data.getInt() != L1 || data.getInt() != L2 ||
+                    data.getInt() != L3) {
+                throw new IOException("Not a network of this architecture: " + file);
+            }
+            short[] featureBiases = shorts(data, L1);
+            short[] featureWeights = shorts(data, FEATURES * L1);
+            int[] hidden1Biases = ints(data, L2);
+            int[] hidden1Weights = widen(shorts(data, L2 * 2 * L1));
+            int[] hidden2Biases = ints(data, L3);
+            int[] hidden2Weights = widen(shorts(data, L3 * L2));
+            int[] outputBias = ints(data, 1);
+            int[] outputWeights = widen(shorts(data, L3));
+            return new NnueNetwork(featureWeights, featureBiases, hidden1Weights, hidden1Biases, hidden2Weights,
+                    hidden2Biases, outputWeights, outputBias);
+        }
+    }
+
+    private static short[] shorts(ByteBuffer data, int count) {
+        short[] values = new short[count];
+        data.asShortBuffer().get(values);
+        data.position(data.position() + count * Short.BYTES);
+        return values;
+    }
+
+    private static int[] ints(ByteBuffer data, int count) {
+        int[] values = new int[count];
+        data.asIntBuffer().get(values);
+        data.position(data.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static int[] widen(short[] values) {
+        int[] widened = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            widened[i] = values[i];
+        }
+        return widened;
+    }
+
+    /**
+     * Weights are drawn so that about half of the neurons of each layer are active, like in a
+     * trained network, which keeps the cost of an evaluation realistic
+     *
+     * @param seed seed of the random numbers
+     * @return a network with random weights
+     */
+    static NnueNetwork random(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        short[] featureWeights = new short[FEATURES * L1];
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (short) random.nextInt(-16, 17);
+        }
+        short[] featureBiases = new short[L1];
+        for (int i = 0; i < L1; i++) {
+            featureBiases[i] = (short) random.nextInt(0, 64);
+        }
+        return new NnueNetwork(featureWeights, featureBiases, randomInts(random, L2 * 2 * L1, 8),
+                randomInts(random, L2, 64), randomInts(random, L3 * L2, 16), randomInts(random, L3, 64),
+                randomInts(random, L3, 16), randomInts(random, 1, 64));
+    }
+
+    private static int[] randomInts(SplittableRandom random, int count, int bound) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = random.nextInt(-bound, bound + 1);
+        }
+        return values;
+    }
+
+    /**
+     * @param out file to write
+     * @throws IOException if the file can't be written
+     */
+    void write(Path out) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(out)))) {
+            output.writeLong(MAGIC);
+            output.writeInt(FEATURES);
+            output.writeInt(L1);
+            output.writeInt(L2);
+            output.writeInt(L3);
+            for (short bias : featureBiases) {
+                output.writeShort(bias);
+            }
+            for (short weight : featureWeights) {
+                output.writeShort(weight);
+            }
+            writeLayer(output, hidden1Biases, hidden1Weights);
+            writeLayer(output, hidden2Biases, hidden2Weights);
+            writeLayer(output, outputBias, outputWeights);
+        }
+    }
+
+    private static void writeLayer(DataOutputStream output, int[] biases, int[] weights) throws IOException {
+        for (int bias : biases) {
+            output.writeInt(bias);
+        }
+        for (int weight : weights) {
+            if (weight != (short) weight) {
+                throw new IllegalStateException("Weight out of 16-bit range: " + weight);
+            }
+            output.writeShort(weight);
+        }
+    }
+}
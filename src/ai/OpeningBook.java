@@ -0,0 +1,148 @@
+package ai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Opening book, either in the project's own compiled format ({@link CompiledBook}) or a standard
+ * Polyglot book ({@link PolyglotBook}), loaded in the background by {@link BookLoader}
+ */
+interface OpeningBook {
+    /**
+     * How a move is chosen from the book moves of a position
+     */
+    enum Policy {
+        // Every book move is equally likely
+        UNIFORM,
+        // Moves are chosen in proportion to their weight
+        WEIGHTED,
+        // The move with the highest weight is always chosen
+        BEST
+    }
+
+    /**
+     * @param move   packed move, see {@link #packMove}
+     * @param weight how often the move was played, higher is better
+     */
+    record Entry(int move, int weight) {
+        private static final Move.MoveType[] PROMOTIONS = {Move.MoveType.PROMOTE_KNIGHT,
+                Move.MoveType.PROMOTE_BISHOP, Move.MoveType.PROMOTE_ROOK, Move.MoveType.PROMOTE_QUEEN};
+
+        int start() {
+            return move & 0x3F;
+        }
+
+        int end() {
+            return (move >>> 6) & 0x3F;
+        }
+
+        /**
+         * @return 0 for none, then knight, bishop, rook, and queen
+         */
+        int promotion() {
+            return move >>> 12;
+        }
+
+        /**
+         * @return the move in the format of {@link NegaMax#getBestMove}, e.g. "e2e4" or
+         * "e7e8 PROMOTE_QUEEN"
+         */
+        String notation() {
+            String notation = Move.indexToNotation(start()) + Move.indexToNotation(end());
+            return promotion() == 0 ? notation : notation + " " + PROMOTIONS[promotion() - 1];
+        }
+    }
+
+    /**
+     * @param state position to look up
+     * @return the book moves of the position, empty if it is not in the book
+     */
+    List<Entry> probe(BitBoards state);
+
+    /**
+     * @return number of (position, move) records
+     */
+    int size();
+
+    /**
+     * Opens the book, detecting the format from the file header
+     *
+     * @param file book to map
+     * @return the mapped book
+     * @throws IOException if the file can't be read or is not a book
+     */
+    static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Opening book is too large: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @param data whole book file, e.g. mapped or read from a jar
+     * @return the book
+     * @throws IOException if the data is not a book
+     */
+    static OpeningBook of(ByteBuffer data) throws IOException {
+        if (data.capacity() >= Long.BYTES && data.getLong(0) == CompiledBook.MAGIC) {
+            return CompiledBook.of(data);
+        }
+        return PolyglotBook.of(data);
+    }
+
+    /**
+     * @param entries book moves of a position, not empty
+     * @param policy  how to choose
+     * @param random  source of randomness
+     * @return the chosen move
+     */
+    static Entry choose(List<Entry> entries, Policy policy, RandomGenerator random) {
+        return switch (policy) {
+            case UNIFORM -> entries.get(random.nextInt(entries.size()));
+            case BEST -> {
+                Entry best = entries.getFirst();
+                for (Entry entry : entries) {
+                    if (Integer.toUnsignedLong(entry.weight()) > Integer.toUnsignedLong(best.weight())) {
+                        best = entry;
+                    }
+                }
+                yield best;
+            }
+            case WEIGHTED -> {
+                long total = 0;
+                for (Entry entry : entries) {
+                    total += Integer.toUnsignedLong(entry.weight());
+                }
+                if (total == 0) {
+                    yield entries.get(random.nextInt(entries.size()));
+                }
+                long target = random.nextLong(total);
+                for (Entry entry : entries) {
+                    target -= Integer.toUnsignedLong(entry.weight());
+                    if (target < 0) {
+                        yield entry;
+                    }
+                }
+                yield entries.getLast();
+            }
+        };
+    }
+
+    /**
+     * @param start     start square index
+     * @param end       end square index
+     * @param promotion 0 for none, then knight, bishop, rook, and queen
+     * @return the move packed into 16 bits
+     */
+    static int packMove(int start, int end, int promotion) {
+        return start | end << 6 | promotion << 12;
+    }
+}
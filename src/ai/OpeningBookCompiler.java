@@ -0,0 +1,95 @@
+package ai;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Compiles the text opening book into the binary format read by {@link CompiledBook}
+ * <br>Usage: java ai.OpeningBookCompiler [opening_book.txt] [opening_book.bin]
+ * <br>The text book has a "pos" line with the first four FEN fields of every position, followed
+ * by one line per move with the move and its weight, e.g. "e2e4 243109"
+ */
+public class OpeningBookCompiler {
+    /**
+     * @param key    {@link Zobrist} key of the position
+     * @param move   move packed by {@link OpeningBook#packMove}
+     * @param weight how often the move was played
+     */
+    record BookRecord(long key, int move, int weight) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path in = Path.of(args.length > 0 ? args[0] : "src/ai/Computations/opening_book.txt");
+        Path out = Path.of(args.length > 1 ? args[1] : "src/ai/Computations/opening_book.bin");
+        BookRecord[] records = read(in);
+        write(records, out);
+        System.out.printf("Compiled %d moves from %s into %s (%d bytes)%n", records.length, in, out,
+                Files.size(out));
+    }
+
+    private static BookRecord[] read(Path in) throws IOException {
+        BookRecord[] records = new BookRecord[1024];
+        int count = 0;
+        long key = 0;
+        boolean inPosition = false;
+        try (BufferedReader reader = Files.newBufferedReader(in)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                ++lineNumber;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (line.startsWith("pos ")) {
+                    // Move counters don't change the key
+                    key = Zobrist.key(new BitBoards(line.substring(4).strip() + " 0 1"));
+                    inPosition = true;
+                    continue;
+                }
+
+                String[] moveArgs = line.split(" ");
+                if (!inPosition || moveArgs.length != 2 || moveArgs[0].length() < 4) {
+                    throw new IllegalArgumentException("Opening book is malformed at line " + lineNumber + ": " + line);
+                }
+                int start = Move.notationToIndex(moveArgs[0].substring(0, 2));
+                int end = Move.notationToIndex(moveArgs[0].substring(2, 4));
+                int promotion = moveArgs[0].length() > 4 ? "nbrq".indexOf(moveArgs[0].charAt(4)) + 1 : 0;
+                if (count == records.length) {
+                    records = Arrays.copyOf(records, count * 2);
+                }
+                records[count++] = new BookRecord(key, OpeningBook.packMove(start, end, promotion),
+                        Integer.parseInt(moveArgs[1]));
+            }
+        }
+
+        return Arrays.copyOf(records, count);
+    }
+
+    /**
+     * Sorts the records by key for the binary search, and by weight within a position, and
+     * writes them in the format of {@link CompiledBook}
+     *
+     * @param records records to write, which are sorted in place
+     * @param out     file to write
+     * @throws IOException if the file can't be written
+     */
+    static void write(BookRecord[] records, Path out) throws IOException {
+        Arrays.sort(records, Comparator.comparing(BookRecord::key, Long::compareUnsigned)
+                .thenComparing(Comparator.comparingInt(BookRecord::weight).reversed()));
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(out)))) {
+            output.writeLong(CompiledBook.MAGIC);
+            for (BookRecord record : records) {
+                output.writeLong(record.key());
+                output.writeShort(record.move());
+                output.writeInt(record.weight());
+            }
+        }
+    }
+}
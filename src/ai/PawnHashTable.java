@@ -0,0 +1,44 @@
+package ai;
+
+/**
+ * Cache of {@link PawnStructure#evaluate} keyed by the pawn-only Zobrist key, which hits for
+ * almost every leaf since pawn structure rarely changes during a search
+ * <br>Not thread safe, so every engine has its own table
+ */
+final class PawnHashTable {
+    static final int DEFAULT_ENTRIES = 1 << 14;
+
+    private final long[] keys;
+    private final long[] scores;
+    private final boolean[] used;
+    long probes, hits;
+
+    /**
+     * @param entries number of entries, a power of two
+     */
+    PawnHashTable(int entries) {
+        if (entries <= 0 || Integer.bitCount(entries) != 1) {
+            throw new IllegalArgumentException("Pawn hash table size must be a power of two: " + entries);
+        }
+        keys = new long[entries];
+        scores = new long[entries];
+        used = new boolean[entries];
+    }
+
+    /**
+     * @return the packed pawn structure score of the state, see {@link PawnStructure#evaluate}
+     */
+    long probe(BitBoards state) {
+        ++probes;
+        int index = (int) state.pawnKey & (keys.length - 1);
+        if (used[index] && keys[index] == state.pawnKey) {
+            ++hits;
+            return scores[index];
+        }
+        long score = PawnStructure.evaluate(state.whitePawns, state.blackPawns);
+        keys[index] = state.pawnKey;
+        scores[index] = score;
+        used[index] = true;
+        return score;
+    }
+}
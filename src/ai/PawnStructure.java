@@ -0,0 +1,142 @@
+package ai;
+
+import static ai.BitBoards.*;
+
+/**
+ * Pawn structure terms computed with bitboard fills: passed, isolated, doubled, and backward
+ * pawns, which only depend on the pawns and are cached in a {@link PawnHashTable}, and the king's
+ * pawn shield, which also depends on the king and is computed every time
+ * <br>Scores are in centipawns from white's point of view
+ */
+final class PawnStructure {
+    private static final long FILE_A = 0x0101010101010101L, FILE_H = FILE_A << 7;
+
+    // Indexed by the rank of the pawn from its own side, 0 for the first rank
+    private static final int[] PASSED_MG = {0, 5, 10, 15, 25, 40, 60, 0};
+    private static final int[] PASSED_EG = {0, 10, 20, 35, 60, 100, 150, 0};
+    private static final int DOUBLED_MG = -10, DOUBLED_EG = -20;
+    private static final int ISOLATED_MG = -10, ISOLATED_EG = -15;
+    private static final int BACKWARD_MG = -8, BACKWARD_EG = -10;
+    // For each pawn right in front of the king, and each pawn two ranks in front
+    private static final int SHIELD_NEAR_MG = 10, SHIELD_FAR_MG = 5;
+
+    private PawnStructure() {
+    }
+
+    /**
+     * @return middlegame score in the high 32 bits and endgame score in the low 32 bits
+     */
+    static long evaluate(long whitePawns, long blackPawns) {
+        int mg = 0, eg = 0;
+
+        long whiteFrontSpans = northFill(whitePawns) << 8, blackFrontSpans = southFill(blackPawns) >>> 8;
+        // Squares the enemy pawns can still attack or block as they advance
+        long notWhitePassed = blackFrontSpans | east(blackFrontSpans) | west(blackFrontSpans);
+        long notBlackPassed = whiteFrontSpans | east(whiteFrontSpans) | west(whiteFrontSpans);
+        // Only the front pawn of doubled pawns can be passed
+        long whitePassed = whitePawns & ~notWhitePassed & ~(southFill(whitePawns) >>> 8);
+        long blackPassed = blackPawns & ~notBlackPassed & ~(northFill(blackPawns) << 8);
+        for (long passed = whitePassed; passed != 0; passed &= passed - 1) {
+            int rank = Long.numberOfTrailingZeros(passed) >>> 3;
+            mg += PASSED_MG[rank];
+            eg += PASSED_EG[rank];
+        }
+        for (long passed = blackPassed; passed != 0; passed &= passed - 1) {
+            int rank = 7 - (Long.numberOfTrailingZeros(passed) >>> 3);
+            mg -= PASSED_MG[rank];
+            eg -= PASSED_EG[rank];
+        }
+
+        int whiteDoubled = Long.bitCount(whitePawns) - Long.bitCount(files(whitePawns) & RANK_1);
+        int blackDoubled = Long.bitCount(blackPawns) - Long.bitCount(files(blackPawns) & RANK_1);
+        mg += (whiteDoubled - blackDoubled) * DOUBLED_MG;
+        eg += (whiteDoubled - blackDoubled) * DOUBLED_EG;
+
+        int whiteIsolated = Long.bitCount(whitePawns & ~adjacentFiles(whitePawns));
+        int blackIsolated = Long.bitCount(blackPawns & ~adjacentFiles(blackPawns));
+        mg += (whiteIsolated - blackIsolated) * ISOLATED_MG;
+        eg += (whiteIsolated - blackIsolated) * ISOLATED_EG;
+
+        // Backward pawns can't advance safely and no pawn of their own side can come to defend them
+        long whiteAttacks = east(whitePawns << 8) | west(whitePawns << 8);
+        long blackAttacks = east(blackPawns >>> 8) | west(blackPawns >>> 8);
+        long whiteBackward = (whitePawns << 8 & blackAttacks & ~northFill(whiteAttacks)) >>> 8;
+        long blackBackward = (blackPawns >>> 8 & whiteAttacks & ~southFill(blackAttacks)) << 8;
+        int backward = Long.bitCount(whiteBackward) - Long.bitCount(blackBackward);
+        mg += backward * BACKWARD_MG;
+        eg += backward * BACKWARD_EG;
+
+        return pack(mg, eg);
+    }
+
+    /**
+     * @param square     square of a pawn
+     * @param white      side of the pawn
+     * @param enemyPawns pawns of the other side
+     * @return if no enemy pawn can block or capture the pawn on its way to promotion
+     */
+    static boolean passed(int square, boolean white, long enemyPawns) {
+        long pawn = SQUARE_TO_BITBOARD[square];
+        long frontSpan = white ? northFill(pawn) << 8 : southFill(pawn) >>> 8;
+        return ((frontSpan | east(frontSpan) | west(frontSpan)) & enemyPawns) == 0;
+    }
+
+    /**
+     * @return middlegame bonus for pawns in front of both kings, from white's point of view
+     */
+    static int kingShield(BitBoards state) {
+        return shield(state.whiteKing, state.whitePawns, true) - shield(state.blackKing, state.blackPawns, false);
+    }
+
+    private static int shield(long king, long pawns, boolean white) {
+        // Only a king that stayed on its first two ranks is sheltered by pawns
+        if ((king & (white ? RANK_1 | RANK_2 : RANK_7 | RANK_8)) == 0) {
+            return 0;
+        }
+        long files = king | east(king) | west(king);
+        long near = white ? files << 8 : files >>> 8;
+        long far = white ? near << 8 : near >>> 8;
+        return Long.bitCount(pawns & near) * SHIELD_NEAR_MG + Long.bitCount(pawns & far) * SHIELD_FAR_MG;
+    }
+
+    static long pack(int mg, int eg) {
+        return (long) mg << 32 | (eg & 0xFFFFFFFFL);
+    }
+
+    static int mg(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    static int eg(long packed) {
+        return (int) packed;
+    }
+
+    private static long northFill(long bitBoard) {
+        bitBoard |= bitBoard << 8;
+        bitBoard |= bitBoard << 16;
+        return bitBoard | bitBoard << 32;
+    }
+
+    private static long southFill(long bitBoard) {
+        bitBoard |= bitBoard >>> 8;
+        bitBoard |= bitBoard >>> 16;
+        return bitBoard | bitBoard >>> 32;
+    }
+
+    private static long files(long bitBoard) {
+        return northFill(bitBoard) | southFill(bitBoard);
+    }
+
+    private static long adjacentFiles(long bitBoard) {
+        long files = files(bitBoard);
+        return east(files) | west(files);
+    }
+
+    static long east(long bitBoard) {
+        return (bitBoard << 1) & ~FILE_A;
+    }
+
+    static long west(long bitBoard) {
+        return (bitBoard >>> 1) & ~FILE_H;
+    }
+}
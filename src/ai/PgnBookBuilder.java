@@ -0,0 +1,382 @@
+package ai;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds an opening book in the format of {@link CompiledBook} from PGN files
+ * <br>Usage: java ai.PgnBookBuilder games.pgn... [--out book.bin] [--min-games n] [--max-ply n]
+ * [--weight games|points] [--threads n]
+ * <br>The files are read one line at a time by a producer that hands batches of games to one
+ * consumer per thread. Every consumer replays its games and counts each (position, move) in its
+ * own {@link MoveTable}, and the tables are merged once all games are read
+ */
+public class PgnBookBuilder {
+    private static final int BATCH_SIZE = 256;
+    // Tells a consumer that there are no more games
+    private static final List<PgnGame> END = List.of();
+    private static final Pattern TAG = Pattern.compile("\\[(\\w+)\\s+\"(.*)\"]");
+    private static final Pattern MOVE_NUMBER = Pattern.compile("^\\d+\\.+");
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    /**
+     * @param startFEN position the game starts from
+     * @param movetext moves of the game, with comments, variations, and move numbers
+     * @param result   points of white: 2 for a win, 1 for a draw or unknown result, 0 for a loss
+     */
+    record PgnGame(String startFEN, String movetext, int result) {
+    }
+
+    /**
+     * Counts of every (position, move) in an open-addressing hash of primitive arrays, so
+     * millions of entries take no objects
+     */
+    static final class MoveTable {
+        private long[] keys;
+        // Moves packed by OpeningBook.packMove, 0 for an empty slot since no move goes from a1 to a1
+        private int[] moves;
+        private int[] games;
+        // 2 for a win and 1 for a draw of the side that made the move
+        private int[] points;
+        private int size;
+        long gamesRead, errors;
+
+        MoveTable() {
+            allocate(1 << 16);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            moves = new int[capacity];
+            games = new int[capacity];
+            points = new int[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(long key, int move, int gameCount, int pointCount) {
+            // Resizes at half full to keep probe sequences short
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int index = hash(key, move) & mask;
+            while (moves[index] != 0 && (keys[index] != key || moves[index] != move)) {
+                index = (index + 1) & mask;
+            }
+            if (moves[index] == 0) {
+                keys[index] = key;
+                moves[index] = move;
+                ++size;
+            }
+            games[index] += gameCount;
+            points[index] += pointCount;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldMoves = moves, oldGames = games, oldPoints = points;
+            allocate(oldKeys.length * 2);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldMoves[i] != 0) {
+                    add(oldKeys[i], oldMoves[i], oldGames[i], oldPoints[i]);
+                }
+            }
+        }
+
+        private static int hash(long key, int move) {
+            long hash = (key ^ move * 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        void merge(MoveTable table) {
+            for (int i = 0; i < table.keys.length; i++) {
+                if (table.moves[i] != 0) {
+                    add(table.keys[i], table.moves[i], table.games[i], table.points[i]);
+                }
+            }
+            gamesRead += table.gamesRead;
+            errors += table.errors;
+        }
+
+        /**
+         * @param minGames    minimum number of games a move must have been played in
+         * @param pointWeight true to weigh moves by points, false to weigh them by games
+         * @return the book records of the moves that are kept
+         */
+        OpeningBookCompiler.BookRecord[] records(int minGames, boolean pointWeight) {
+            List<OpeningBookCompiler.BookRecord> records = new ArrayList<>();
+            for (int i = 0; i < keys.length; i++) {
+                int weight = pointWeight ? points[i] : games[i];
+                if (moves[i] != 0 && games[i] >= minGames && weight > 0) {
+                    records.add(new OpeningBookCompiler.BookRecord(keys[i], moves[i], weight));
+                }
+            }
+            return records.toArray(new OpeningBookCompiler.BookRecord[0]);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        List<Path> inputs = new ArrayList<>();
+        Path out = Path.of("book.bin");
+        int minGames = 5, maxPly = 24;
+        boolean pointWeight = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                inputs.add(Path.of(args[i]));
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--out" -> out = Path.of(args[++i]);
+                case "--min-games" -> minGames = Integer.parseInt(args[++i]);
+                case "--max-ply" -> maxPly = Integer.parseInt(args[++i]);
+                case "--weight" -> pointWeight = switch (args[++i]) {
+                    case "games" -> false;
+                    case "points" -> true;
+                    default -> throw new IllegalArgumentException("Unknown weight: " + args[i]);
+                };
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: java ai.PgnBookBuilder games.pgn... [--out book.bin] [--min-games n] " +
+                    "[--max-ply n] [--weight games|points] [--threads n]");
+            System.exit(1);
+        }
+
+        long startTime = System.nanoTime();
+        MoveTable table = build(inputs, maxPly, threads);
+        OpeningBookCompiler.BookRecord[] records = table.records(minGames, pointWeight);
+        OpeningBookCompiler.write(records, out);
+        long millis = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.printf("%d games (%d with errors), %d distinct moves, %d kept in %s, %d ms (%.0f games/s)%n",
+                table.gamesRead, table.errors, table.size(), records.length, out, millis,
+                millis == 0 ? 0 : table.gamesRead * 1000.0 / millis);
+    }
+
+    /**
+     * @param inputs  PGN files to read
+     * @param maxPly  number of plies of every game to count
+     * @param threads number of consumers
+     * @return the counts of all games
+     */
+    static MoveTable build(List<Path> inputs, int maxPly, int threads) throws IOException, InterruptedException,
+            ExecutionException {
+        BlockingQueue<List<PgnGame>> queue = new ArrayBlockingQueue<>(threads * 4);
+        ExecutorService consumers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<MoveTable>> tables = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                tables.add(consumers.submit(() -> consume(queue, maxPly)));
+            }
+
+            List<PgnGame> batch = new ArrayList<>(BATCH_SIZE);
+            for (Path input : inputs) {
+                try (BufferedReader reader = Files.newBufferedReader(input)) {
+                    PgnGame game;
+                    while ((game = readGame(reader)) != null) {
+                        batch.add(game);
+                        if (batch.size() == BATCH_SIZE) {
+                            put(queue, batch, tables);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                }
+            }
+            put(queue, batch, tables);
+            for (int i = 0; i < threads; i++) {
+                put(queue, END, tables);
+            }
+
+            MoveTable table = tables.getFirst().get();
+            for (int i = 1; i < tables.size(); i++) {
+                table.merge(tables.get(i).get());
+            }
+            return table;
+        } finally {
+            consumers.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for room in the queue, and stops waiting if a consumer failed, since the queue would
+     * otherwise fill up for good
+     *
+     * @throws ExecutionException with the error of the first consumer that failed
+     */
+    private static void put(BlockingQueue<List<PgnGame>> queue, List<PgnGame> batch, List<Future<MoveTable>> tables)
+            throws InterruptedException, ExecutionException {
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            for (Future<MoveTable> table : tables) {
+                // Consumers only return normally after taking END
+                if (table.isDone()) {
+                    table.get();
+                }
+            }
+        }
+    }
+
+    private static MoveTable consume(BlockingQueue<List<PgnGame>> queue, int maxPly) throws InterruptedException {
+        MoveTable table = new MoveTable();
+        List<PgnGame> batch;
+        while ((batch = queue.take()) != END) {
+            for (PgnGame game : batch) {
+                ++table.gamesRead;
+                try {
+                    replay(game, maxPly, table);
+                } catch (RuntimeException e) {
+                    // Any error of the board code, e.g. from a malformed FEN tag, only loses its own game.
+                    // Moves before the error are still counted
+                    ++table.errors;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Reads the next game, reading only its own lines
+     *
+     * @return the game, or null at the end of the file
+     */
+    static PgnGame readGame(BufferedReader reader) throws IOException {
+        String FEN = START_FEN;
+        int result = 1;
+        StringBuilder movetext = new StringBuilder();
+        boolean inGame = false;
+        String line;
+        while (true) {
+            reader.mark(1 << 16);
+            line = reader.readLine();
+            if (line == null) {
+                break;
+            }
+            line = line.strip();
+            if (line.startsWith("%")) {
+                continue;
+            }
+            if (line.startsWith("[")) {
+                if (!movetext.isEmpty()) {
+                    // Tag of the next game
+                    reader.reset();
+                    break;
+                }
+                inGame = true;
+                Matcher tag = TAG.matcher(line);
+                if (tag.matches()) {
+                    switch (tag.group(1)) {
+                        case "FEN" -> FEN = tag.group(2);
+                        case "Result" -> result = switch (tag.group(2)) {
+                            case "1-0" -> 2;
+                            case "0-1" -> 0;
+                            default -> 1;
+                        };
+                        default -> {
+                            // Other tags are not needed
+                        }
+                    }
+                }
+            } else if (!line.isEmpty()) {
+                inGame = true;
+                movetext.append(line).append('\n');
+            }
+        }
+        return inGame ? new PgnGame(FEN, movetext.toString(), result) : null;
+    }
+
+    /**
+     * Counts the moves of the first plies of the game
+     */
+    static void replay(PgnGame game, int maxPly, MoveTable table) {
+        BitBoards state = new BitBoards(game.startFEN());
+        int ply = 0;
+        for (String san : sanMoves(game.movetext())) {
+            if (ply++ >= maxPly) {
+                return;
+            }
+            Move move = AlgebraicNotation.fromSAN(state, san);
+            int points = state.whiteToMove ? game.result() : 2 - game.result();
+            table.add(state.key, OpeningBook.packMove(move.start(), move.end(), promotion(move)), 1, points);
+            state = state.tryMove(move);
+        }
+    }
+
+    private static int promotion(Move move) {
+        return switch (move.moveType()) {
+            case PROMOTE_KNIGHT -> 1;
+            case PROMOTE_BISHOP -> 2;
+            case PROMOTE_ROOK -> 3;
+            case PROMOTE_QUEEN -> 4;
+            default -> 0;
+        };
+    }
+
+    /**
+     * @return the moves of the main line, without comments, variations, annotations, move
+     * numbers, and the result
+     */
+    static List<String> sanMoves(String movetext) {
+        List<String> moves = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        int variationDepth = 0;
+        for (int i = 0; i <= movetext.length(); i++) {
+            char c = i < movetext.length() ? movetext.charAt(i) : ' ';
+            int depthChange = 0;
+            if (c == '{') {
+                int end = movetext.indexOf('}', i);
+                i = end == -1 ? movetext.length() : end;
+                c = ' ';
+            } else if (c == ';') {
+                int end = movetext.indexOf('\n', i);
+                i = end == -1 ? movetext.length() : end;
+                c = ' ';
+            } else if (c == '(' || c == ')') {
+                // The move before the parenthesis still belongs to the current line
+                depthChange = c == '(' ? 1 : -1;
+                c = ' ';
+            }
+
+            if (!Character.isWhitespace(c)) {
+                token.append(c);
+                continue;
+            }
+            if (!token.isEmpty() && variationDepth == 0) {
+                String move = MOVE_NUMBER.matcher(token).replaceFirst("");
+                switch (move) {
+                    case "1-0", "0-1", "1/2-1/2", "*" -> {
+                        return moves;
+                    }
+                    default -> {
+                        if (!move.isEmpty() && move.charAt(0) != '$') {
+                            moves.add(move);
+                        }
+                    }
+                }
+            }
+            token.setLength(0);
+            variationDepth += depthChange;
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,39 @@
+package ai;
+
+/**
+ * Checks the Polyglot keys of {@link PolyglotBook} against the test positions of the Polyglot
+ * book format, which cover pieces of every kind, castling rights, en passant, and the side to move
+ * <br>Usage: java ai.PolyglotKeyCheck, which exits with status 1 if a key is wrong
+ */
+public final class PolyglotKeyCheck {
+    // Position and its published key, the last one with the rook on a3 as in the published position
+    private static final Object[][] KEYS = {
+            {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 0x463B96181691FC9CL},
+            {"rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1", 0x823C9B50FD114196L},
+            {"rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2", 0x0756B94461C50FB0L},
+            {"rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2", 0x662FAFB965DB29D4L},
+            {"rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3", 0x22A48B5A8E47FF78L},
+            {"rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR b kq - 0 3", 0x652A607CA3F242C1L},
+            {"rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4", 0x00FDD303C946BDD9L},
+            {"rnbqkbnr/p1pppppp/8/8/PpP4P/8/1P1PPPP1/RNBQKBNR b KQkq c3 0 3", 0x3C8123EA7B067637L},
+            {"rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4", 0x5C3F9B829B279560L},
+    };
+
+    private PolyglotKeyCheck() {
+    }
+
+    public static void main(String[] args) {
+        int failures = 0;
+        for (Object[] test : KEYS) {
+            long key = PolyglotBook.key(new BitBoards((String) test[0]));
+            if (key != (long) test[1]) {
+                System.err.printf("Wrong Polyglot key %016X instead of %016X for %s%n", key, (long) test[1], test[0]);
+                ++failures;
+            }
+        }
+        System.out.println(failures == 0 ? "All Polyglot keys are correct" : failures + " Polyglot keys are wrong");
+        if (failures != 0) {
+            System.exit(1);
+        }
+    }
+}
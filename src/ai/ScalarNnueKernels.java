@@ -0,0 +1,44 @@
+package ai;
+
+/**
+ * Plain loops, used when the Vector API is not available
+ */
+final class ScalarNnueKernels implements NnueKernels {
+    @Override
+    public void add(short[] accumulator, short[] weights, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    @Override
+    public void subtract(short[] accumulator, short[] weights, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    @Override
+    public void clip(short[] accumulator, int max, int[] inputs, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            inputs[offset + i] = Math.clamp(accumulator[i], 0, max);
+        }
+    }
+
+    @Override
+    public void dense(int[] inputs, int[] weights, int[] biases, int[] outputs) {
+        for (int output = 0; output < outputs.length; output++) {
+            int sum = biases[output];
+            int row = output * inputs.length;
+            for (int i = 0; i < inputs.length; i++) {
+                sum += inputs[i] * weights[row + i];
+            }
+            outputs[output] = sum;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "scalar";
+    }
+}
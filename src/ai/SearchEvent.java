@@ -0,0 +1,44 @@
+package ai;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one call to {@link NegaMax#search}, from the start to the end of the search
+ * <br>Record with: java -XX:StartFlightRecording:filename=chess.jfr ...
+ */
+@Name("chess.Search")
+@Label("Search")
+@Category({"Chess", "Engine"})
+@Description("Search of a position by the engine")
+final class SearchEvent extends Event {
+    @Label("FEN")
+    String fen;
+
+    @Label("Depth Limit")
+    int depthLimit;
+
+    @Label("Node Limit")
+    long nodeLimit;
+
+    @Label("Time Limit (ms)")
+    long timeLimit;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Score")
+    int score;
+
+    @Label("Completed Depth")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Nodes per Second")
+    long nodesPerSecond;
+}
@@ -0,0 +1,43 @@
+package ai;
+
+/**
+ * Limits for a single search. A limit of 0 means that limit is not used
+ *
+ * @param depth      maximum depth to search
+ * @param nodes      maximum number of nodes to visit
+ * @param timeMillis maximum time to search in milliseconds
+ */
+public record SearchLimits(int depth, long nodes, long timeMillis) {
+    /**
+     * Depth used when no depth limit is given
+     */
+    static final int MAX_DEPTH = 64;
+
+    public SearchLimits {
+        if (depth < 0 || nodes < 0 || timeMillis < 0) {
+            throw new IllegalArgumentException("Negative search limit: " + depth + ", " + nodes + ", " + timeMillis);
+        }
+        if (depth == 0 && nodes == 0 && timeMillis == 0) {
+            throw new IllegalArgumentException("At least one search limit is needed");
+        }
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Depth limit too large: " + depth);
+        }
+    }
+
+    public static SearchLimits depth(int depth) {
+        return new SearchLimits(depth, 0, 0);
+    }
+
+    public static SearchLimits nodes(long nodes) {
+        return new SearchLimits(0, nodes, 0);
+    }
+
+    public static SearchLimits time(long timeMillis) {
+        return new SearchLimits(0, 0, timeMillis);
+    }
+
+    int maxDepth() {
+        return depth == 0 ? MAX_DEPTH : depth;
+    }
+}
@@ -0,0 +1,16 @@
+package ai;
+
+/**
+ * Outcome of a single search
+ *
+ * @param FEN        searched position
+ * @param bestMove   best move NOT in algebraic notation. Format: "a1a2 T", or null if there are no legal moves
+ * @param score      score of the best move in the perspective of the side to move
+ * @param depth      deepest fully searched depth
+ * @param nodes      number of nodes visited
+ * @param timeMillis time spent searching in milliseconds
+ * @param stats      counters of the search up to this result
+ */
+public record SearchResult(String FEN, String bestMove, int score, int depth, long nodes, long timeMillis,
+                           SearchStats stats) {
+}
@@ -0,0 +1,240 @@
+package ai;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Counters of a search. Each {@link NegaMax} updates its own instance without synchronization,
+ * and a copy is handed out once the search is over
+ */
+public final class SearchStats {
+    static final int MAX_PLY = 128;
+
+    long nodes;
+    long qnodes;
+    long betaCutoffs;
+    long firstMoveCutoffs;
+    // Moves searched one ply deeper, see NegaMax.extension
+    long extensions;
+    // Nodes cut by reverse futility pruning or razoring, and quiet moves skipped by futility or late move pruning
+    long prunedNodes;
+    long prunedMoves;
+    // Positions found in the endgame tables
+    long tbHits;
+    long pawnProbes;
+    long pawnHits;
+    // Leaf evaluations, and those that returned before the pawn or the attack terms, see BitBoards.evaluateBoard
+    long evaluations;
+    long lazyMaterialExits;
+    long lazyPawnExits;
+    long evalCacheProbes;
+    long evalCacheHits;
+    long timeMillis;
+    // Nodes visited at each distance from the root
+    final long[] plyNodes = new long[MAX_PLY];
+    // Nodes and time at the end of each iteration, indexed by depth
+    final long[] iterationNodes = new long[SearchLimits.MAX_DEPTH + 1];
+    final long[] iterationMillis = new long[SearchLimits.MAX_DEPTH + 1];
+    int iterations;
+
+    SearchStats() {
+    }
+
+    private SearchStats(SearchStats stats) {
+        merge(stats);
+        this.iterations = stats.iterations;
+        System.arraycopy(stats.iterationNodes, 0, this.iterationNodes, 0, this.iterationNodes.length);
+        System.arraycopy(stats.iterationMillis, 0, this.iterationMillis, 0, this.iterationMillis.length);
+    }
+
+    void reset() {
+        nodes = qnodes = betaCutoffs = firstMoveCutoffs = 0;
+        extensions = timeMillis = 0;
+        prunedNodes = prunedMoves = tbHits = 0;
+        pawnProbes = pawnHits = 0;
+        evaluations = lazyMaterialExits = lazyPawnExits = 0;
+        evalCacheProbes = evalCacheHits = 0;
+        Arrays.fill(plyNodes, 0);
+        Arrays.fill(iterationNodes, 0);
+        Arrays.fill(iterationMillis, 0);
+        iterations = 0;
+    }
+
+    void node(int ply) {
+        ++nodes;
+        ++plyNodes[Math.min(ply, MAX_PLY - 1)];
+    }
+
+    /**
+     * @param moveIndex index of the move that caused the cutoff in the searched order
+     */
+    void betaCutoff(int moveIndex) {
+        ++betaCutoffs;
+        if (moveIndex == 0) {
+            ++firstMoveCutoffs;
+        }
+    }
+
+    void iteration(int depth, long timeMillis) {
+        iterations = depth;
+        iterationNodes[depth] = nodes;
+        iterationMillis[depth] = timeMillis;
+    }
+
+    SearchStats copy() {
+        return new SearchStats(this);
+    }
+
+    /**
+     * Adds the counters of another search, e.g. to sum the searches of a batch. Iterations are
+     * not added since they only make sense for a single search
+     *
+     * @param stats counters to add
+     */
+    public void merge(SearchStats stats) {
+        nodes += stats.nodes;
+        qnodes += stats.qnodes;
+        betaCutoffs += stats.betaCutoffs;
+        firstMoveCutoffs += stats.firstMoveCutoffs;
+        extensions += stats.extensions;
+        prunedNodes += stats.prunedNodes;
+        prunedMoves += stats.prunedMoves;
+        tbHits += stats.tbHits;
+        pawnProbes += stats.pawnProbes;
+        pawnHits += stats.pawnHits;
+        evaluations += stats.evaluations;
+        lazyMaterialExits += stats.lazyMaterialExits;
+        lazyPawnExits += stats.lazyPawnExits;
+        evalCacheProbes += stats.evalCacheProbes;
+        evalCacheHits += stats.evalCacheHits;
+        timeMillis += stats.timeMillis;
+        for (int i = 0; i < MAX_PLY; i++) {
+            plyNodes[i] += stats.plyNodes[i];
+        }
+    }
+
+    public long nodes() {
+        return nodes;
+    }
+
+    public long qnodes() {
+        return qnodes;
+    }
+
+    public long betaCutoffs() {
+        return betaCutoffs;
+    }
+
+    /**
+     * @return share of beta cutoffs caused by the first move searched, which shows how good move ordering is
+     */
+    public double firstMoveCutoffRate() {
+        return betaCutoffs == 0 ? 0 : (double) firstMoveCutoffs / betaCutoffs;
+    }
+
+    public double pawnHitRate() {
+        return pawnProbes == 0 ? 0 : (double) pawnHits / pawnProbes;
+    }
+
+    public long evaluations() {
+        return evaluations;
+    }
+
+    /**
+     * @return share of evaluations that returned early because the score was far outside the window
+     */
+    public double lazyExitRate() {
+        return evaluations == 0 ? 0 : (double) (lazyMaterialExits + lazyPawnExits) / evaluations;
+    }
+
+    public double evalCacheHitRate() {
+        return evalCacheProbes == 0 ? 0 : (double) evalCacheHits / evalCacheProbes;
+    }
+
+    public long timeMillis() {
+        return timeMillis;
+    }
+
+    public double nodesPerSecond() {
+        return timeMillis == 0 ? 0 : nodes * 1000.0 / timeMillis;
+    }
+
+    /**
+     * @param ply distance from the root
+     * @return average number of children searched per node at the ply
+     */
+    public double branchingFactor(int ply) {
+        if (ply < 0 || ply >= MAX_PLY - 1 || plyNodes[ply] == 0) {
+            return 0;
+        }
+        return (double) plyNodes[ply + 1] / plyNodes[ply];
+    }
+
+    /**
+     * @param depth depth of a completed iteration
+     * @return nodes of the iteration divided by the nodes of the previous iteration
+     */
+    public double effectiveBranchingFactor(int depth) {
+        if (depth < 2 || depth > iterations) {
+            return 0;
+        }
+        long previous = iterationNodes[depth - 1] - iterationNodes[depth - 2];
+        return previous == 0 ? 0 : (double) (iterationNodes[depth] - iterationNodes[depth - 1]) / previous;
+    }
+
+    /**
+     * @param depth depth of a completed iteration
+     * @return time spent on only that iteration in milliseconds
+     */
+    public long iterationMillis(int depth) {
+        if (depth < 1 || depth > iterations) {
+            return 0;
+        }
+        return iterationMillis[depth] - iterationMillis[depth - 1];
+    }
+
+    public int iterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the counters as a single line of JSON
+     */
+    public String toJSON() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"nodes\":").append(nodes)
+                .append(",\"qnodes\":").append(qnodes)
+                .append(",\"nps\":").append(Math.round(nodesPerSecond()))
+                .append(",\"timeMillis\":").append(timeMillis)
+                .append(",\"betaCutoffs\":").append(betaCutoffs)
+                .append(",\"firstMoveCutoffRate\":").append(String.format(Locale.ROOT, "%.4f", firstMoveCutoffRate()))
+                .append(",\"extensions\":").append(extensions)
+                .append(",\"prunedNodes\":").append(prunedNodes)
+                .append(",\"prunedMoves\":").append(prunedMoves)
+                .append(",\"tbHits\":").append(tbHits)
+                .append(",\"pawnProbes\":").append(pawnProbes)
+                .append(",\"pawnHits\":").append(pawnHits)
+                .append(",\"evaluations\":").append(evaluations)
+                .append(",\"lazyMaterialExits\":").append(lazyMaterialExits)
+                .append(",\"lazyPawnExits\":").append(lazyPawnExits)
+                .append(",\"evalCacheProbes\":").append(evalCacheProbes)
+                .append(",\"evalCacheHits\":").append(evalCacheHits)
+                .append(",\"branchingFactor\":[");
+        for (int ply = 0; ply < MAX_PLY - 1 && plyNodes[ply + 1] != 0; ply++) {
+            json.append(ply == 0 ? "" : ",").append(String.format(Locale.ROOT, "%.2f", branchingFactor(ply)));
+        }
+        json.append("],\"iterationMillis\":[");
+        for (int depth = 1; depth <= iterations; depth++) {
+            json.append(depth == 1 ? "" : ",").append(iterationMillis(depth));
+        }
+        return json.append("]}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nodes %d, qnodes %d, %.0f nps, first move cutoffs %.1f%%, pawn hash hits %.1f%%, " +
+                        "lazy eval exits %.1f%%, eval cache hits %.1f%%, tb hits %d", nodes, qnodes, nodesPerSecond(),
+                100 * firstMoveCutoffRate(), 100 * pawnHitRate(), 100 * lazyExitRate(), 100 * evalCacheHitRate(),
+                tbHits);
+    }
+}
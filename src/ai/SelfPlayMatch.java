@@ -0,0 +1,424 @@
+package ai;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static ai.BitBoards.*;
+
+/**
+ * Plays two engine configurations against each other, one game per core, until a sequential
+ * probability ratio test (SPRT) decides if the first one is stronger
+ * <br>Usage: java ai.SelfPlayMatch --engine1 "name=new,nodes=20000" --engine2 "name=base,nodes=20000"
+ * [--games n] [--threads n] [--pgn games.pgn] [--openings opening_book.txt] [--seed n]
+ * [--elo0 0] [--elo1 10] [--alpha 0.05] [--beta 0.05]
+ * <br>Each opening from the opening book is played twice, once with each engine as white
+ */
+public class SelfPlayMatch {
+    private static final int MAX_PLIES = 400;
+    // A side is adjudicated as winning after both engines agree for this many plies in a row
+    private static final int RESIGN_SCORE = QUEEN_VAL;
+    private static final int RESIGN_PLIES = 8;
+    // A game is adjudicated as drawn after this ply if both engines see equality for long enough
+    private static final int DRAW_SCORE = PAWN_VAL / 10;
+    private static final int DRAW_PLIES = 12;
+    private static final int DRAW_START_PLY = 80;
+
+    /**
+     * @param name   name used in the PGN
+     * @param config engine settings
+     * @param limits limits for every move
+     */
+    record Player(String name, EngineConfig config, SearchLimits limits) {
+        /**
+         * @param spec comma separated settings, e.g. "name=base,nodes=20000,book=false".
+         *             name, depth, nodes, and time are for the match, the rest for the engine
+         */
+        static Player parse(String spec) {
+            String name = "engine";
+            int depth = 0;
+            long nodes = 0, time = 0;
+            EngineConfig config = new EngineConfig();
+            // Games start from book positions, so the engine's own book would only remove variety
+            config.useOpeningBook = false;
+            for (String setting : spec.split(",")) {
+                if (setting.isBlank()) {
+                    continue;
+                }
+                String[] parts = setting.split("=", 2);
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid engine setting: " + setting);
+                }
+                String key = parts[0].strip(), value = parts[1].strip();
+                switch (key) {
+                    case "name" -> name = value;
+                    case "depth" -> depth = Integer.parseInt(value);
+                    case "nodes" -> nodes = Long.parseLong(value);
+                    case "time" -> time = Long.parseLong(value);
+                    default -> config.set(key, value);
+                }
+            }
+            if (depth == 0 && nodes == 0 && time == 0) {
+                nodes = 20_000;
+            }
+            return new Player(name, config, new SearchLimits(depth, nodes, time));
+        }
+    }
+
+    /**
+     * @param round       number of the game, starting at 1
+     * @param white       player with the white pieces
+     * @param black       player with the black pieces
+     * @param startFEN    position the game started from
+     * @param moves       moves of the game in standard algebraic notation
+     * @param result      PGN result, "1-0", "0-1", or "1/2-1/2"
+     * @param termination why the game ended
+     */
+    record Game(int round, Player white, Player black, String startFEN, List<String> moves, String result,
+                String termination) {
+        /**
+         * @return 1 if the first engine won, 0.5 for a draw, or 0 if it lost
+         */
+        double firstEngineScore(Player first) {
+            return switch (result) {
+                case "1-0" -> white == first ? 1 : 0;
+                case "0-1" -> black == first ? 1 : 0;
+                default -> 0.5;
+            };
+        }
+    }
+
+    /**
+     * Generalized SPRT on the game results, using the normal approximation of the
+     * log-likelihood ratio for logistic Elo bounds
+     */
+    static final class Sprt {
+        private final double score0, score1, lowerBound, upperBound;
+        int wins, draws, losses;
+
+        Sprt(double elo0, double elo1, double alpha, double beta) {
+            this.score0 = expectedScore(elo0);
+            this.score1 = expectedScore(elo1);
+            this.lowerBound = Math.log(beta / (1 - alpha));
+            this.upperBound = Math.log((1 - beta) / alpha);
+        }
+
+        void add(double score) {
+            if (score == 1) {
+                ++wins;
+            } else if (score == 0) {
+                ++losses;
+            } else {
+                ++draws;
+            }
+        }
+
+        int games() {
+            return wins + draws + losses;
+        }
+
+        double score() {
+            return (wins + draws / 2.0) / games();
+        }
+
+        private double variance() {
+            double score = score();
+            return (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2) +
+                    losses * Math.pow(score, 2)) / games();
+        }
+
+        double llr() {
+            double variance = variance();
+            if (games() == 0 || variance == 0) {
+                return 0;
+            }
+            return games() * (score1 - score0) * (2 * score() - score0 - score1) / (2 * variance);
+        }
+
+        /**
+         * @return true if H1 (first engine is at least elo1 stronger) is accepted
+         */
+        boolean acceptedH1() {
+            return llr() >= upperBound;
+        }
+
+        /**
+         * @return true if H0 (first engine is at most elo0 stronger) is accepted
+         */
+        boolean acceptedH0() {
+            return llr() <= lowerBound;
+        }
+
+        /**
+         * @return Elo difference and its 95% confidence interval
+         */
+        double[] elo() {
+            double error = 1.959964 * Math.sqrt(variance() / games());
+            return new double[]{eloFromScore(score()), eloFromScore(score() - error), eloFromScore(score() + error)};
+        }
+
+        private static double expectedScore(double elo) {
+            return 1 / (1 + Math.pow(10, -elo / 400));
+        }
+
+        private static double eloFromScore(double score) {
+            score = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        @Override
+        public String toString() {
+            double[] elo = elo();
+            return String.format("Games %d: +%d =%d -%d, Elo %.1f [%.1f, %.1f], LLR %.2f [%.2f, %.2f]",
+                    games(), wins, draws, losses, elo[0], elo[1], elo[2], llr(), lowerBound, upperBound);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Player first = null, second = null;
+        int games = 1000, threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        double elo0 = 0, elo1 = 10, alpha = 0.05, beta = 0.05;
+        Path pgn = Path.of("selfplay.pgn"), openings = Path.of("src/ai/Computations/opening_book.txt");
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--engine1" -> first = Player.parse(value);
+                case "--engine2" -> second = Player.parse(value);
+                case "--games" -> games = Integer.parseInt(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--pgn" -> pgn = Path.of(value);
+                case "--openings" -> openings = Path.of(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--elo0" -> elo0 = Double.parseDouble(value);
+                case "--elo1" -> elo1 = Double.parseDouble(value);
+                case "--alpha" -> alpha = Double.parseDouble(value);
+                case "--beta" -> beta = Double.parseDouble(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (first == null || second == null) {
+            System.err.println("Usage: java ai.SelfPlayMatch --engine1 spec --engine2 spec [options]");
+            System.exit(1);
+        }
+
+        List<String> startPositions = readOpenings(openings, seed);
+        Sprt sprt = new Sprt(elo0, elo1, alpha, beta);
+        System.out.printf("%s vs %s, %d games on %d threads, SPRT elo0=%.1f elo1=%.1f%n", first.name(),
+                second.name(), games, threads, elo0, elo1);
+
+        // Each worker keeps one engine per player: index 0 for the first, 1 for the second
+        final Player player1 = first, player2 = second;
+        ThreadLocal<NegaMax[]> engines = ThreadLocal.withInitial(() -> new NegaMax[]{
+                new NegaMax(player1.config()), new NegaMax(player2.config())});
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "self-play");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<Game> completed = new ExecutorCompletionService<>(workers);
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(pgn))) {
+            int submitted = 0, pending = 0;
+            boolean decided = false;
+            while (!decided && (submitted < games || pending > 0)) {
+                while (submitted < games && pending < threads) {
+                    final int round = ++submitted;
+                    final String startFEN = startPositions.get(((round - 1) / 2) % startPositions.size());
+                    final Player white = round % 2 == 1 ? first : second;
+                    final Player black = white == first ? second : first;
+                    final boolean firstIsWhite = white == first;
+                    completed.submit(() -> {
+                        NegaMax[] workerEngines = engines.get();
+                        return play(round, startFEN, white, workerEngines[firstIsWhite ? 0 : 1], black,
+                                workerEngines[firstIsWhite ? 1 : 0]);
+                    });
+                    ++pending;
+                }
+
+                Game game;
+                try {
+                    game = completed.take().get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Self-play game failed", e.getCause());
+                }
+                --pending;
+                writePGN(writer, game);
+                sprt.add(game.firstEngineScore(first));
+                System.out.printf("Game %d %s (%s): %s%n", game.round(), game.result(), game.termination(), sprt);
+                decided = sprt.acceptedH0() || sprt.acceptedH1();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        System.out.println(sprt);
+        if (sprt.acceptedH1()) {
+            System.out.println("H1 accepted: " + first.name() + " is stronger");
+        } else if (sprt.acceptedH0()) {
+            System.out.println("H0 accepted: " + first.name() + " is not stronger");
+        } else {
+            System.out.println("Inconclusive after " + sprt.games() + " games");
+        }
+        System.out.println("Games written to " + pgn.toAbsolutePath());
+    }
+
+    /**
+     * @return every position of the opening book in a random but repeatable order
+     */
+    static List<String> readOpenings(Path openings, long seed) throws IOException {
+        List<String> positions = new ArrayList<>();
+        for (String line : Files.readAllLines(openings)) {
+            if (line.startsWith("pos ")) {
+                positions.add(line.substring(4).strip() + " 0 1");
+            }
+        }
+        if (positions.isEmpty()) {
+            throw new IllegalArgumentException("No opening positions in " + openings);
+        }
+        Collections.shuffle(positions, new Random(seed));
+        return positions;
+    }
+
+    /**
+     * Plays a single game until it is over or adjudicated
+     */
+    static Game play(int round, String startFEN, Player white, NegaMax whiteEngine, Player black,
+                     NegaMax blackEngine) {
+        BitBoards state = new BitBoards(startFEN);
+        List<String> moves = new ArrayList<>();
+        Map<String, Integer> repetitions = new HashMap<>();
+        int whiteWinningPlies = 0, blackWinningPlies = 0, drawnPlies = 0;
+
+        for (int ply = 0; ; ply++) {
+            Move[] legalMoves = MoveGeneration.generateLegalMoves(state);
+            if (legalMoves.length == 0) {
+                boolean inCheck = !state.safeSquare(state.whiteToMove, state.whiteToMove ? state.whiteKing :
+                        state.blackKing);
+                if (inCheck) {
+                    return new Game(round, white, black, startFEN, moves, state.whiteToMove ? "0-1" : "1-0",
+                            "checkmate");
+                }
+                return new Game(round, white, black, startFEN, moves, "1/2-1/2", "stalemate");
+            }
+            if (state.halfMoveClock >= 100) {
+                return new Game(round, white, black, startFEN, moves, "1/2-1/2", "fifty-move rule");
+            }
+            String FEN = state.toFEN();
+            String position = FEN.substring(0, FEN.lastIndexOf(' ', FEN.lastIndexOf(' ') - 1));
+            if (repetitions.merge(position, 1, Integer::sum) >= 3) {
+                return new Game(round, white, black, startFEN, moves, "1/2-1/2", "threefold repetition");
+            }
+            if (insufficientMaterial(state)) {
+                return new Game(round, white, black, startFEN, moves, "1/2-1/2", "insufficient material");
+            }
+            if (ply >= MAX_PLIES) {
+                return new Game(round, white, black, startFEN, moves, "1/2-1/2", "move limit");
+            }
+
+            Player player = state.whiteToMove ? white : black;
+            SearchResult result = (state.whiteToMove ? whiteEngine : blackEngine).search(FEN, player.limits());
+            Move move = null;
+            for (Move legalMove : legalMoves) {
+                if (legalMove.toString().equals(result.bestMove())) {
+                    move = legalMove;
+                }
+            }
+            if (move == null) {
+                throw new IllegalStateException(player.name() + " played an illegal move " + result.bestMove() +
+                        " in " + FEN);
+            }
+
+            // Both engines have to agree over several plies before the game is adjudicated
+            int whiteScore = state.whiteToMove ? result.score() : -result.score();
+            whiteWinningPlies = whiteScore >= RESIGN_SCORE ? whiteWinningPlies + 1 : 0;
+            blackWinningPlies = whiteScore <= -RESIGN_SCORE ? blackWinningPlies + 1 : 0;
+            drawnPlies = Math.abs(whiteScore) <= DRAW_SCORE ? drawnPlies + 1 : 0;
+
+            moves.add(AlgebraicNotation.toSAN(state, move));
+            state = state.tryMove(move);
+
+            if (whiteWinningPlies >= RESIGN_PLIES) {
+                return new Game(round, white, black, startFEN, moves, "1-0", "adjudicated win");
+            }
+            if (blackWinningPlies >= RESIGN_PLIES) {
+                return new Game(round, white, black, startFEN, moves, "0-1", "adjudicated win");
+            }
+            if (ply >= DRAW_START_PLY && drawnPlies >= DRAW_PLIES) {
+                return new Game(round, white, black, startFEN, moves, "1/2-1/2", "adjudicated draw");
+            }
+        }
+    }
+
+    private static boolean insufficientMaterial(BitBoards state) {
+        if ((state.whitePawns | state.blackPawns | state.whiteRooks | state.blackRooks | state.whiteQueens |
+                state.blackQueens) != 0) {
+            return false;
+        }
+        return Long.bitCount(state.whiteKnights | state.blackKnights | state.whiteBishops | state.blackBishops) <= 1;
+    }
+
+    private static void writePGN(PrintWriter writer, Game game) {
+        writer.printf("[Event \"Self-play\"]%n");
+        writer.printf("[Site \"?\"]%n");
+        writer.printf("[Date \"%s\"]%n", LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd")));
+        writer.printf("[Round \"%d\"]%n", game.round());
+        writer.printf("[White \"%s\"]%n", game.white().name());
+        writer.printf("[Black \"%s\"]%n", game.black().name());
+        writer.printf("[Result \"%s\"]%n", game.result());
+        writer.printf("[SetUp \"1\"]%n");
+        writer.printf("[FEN \"%s\"]%n", game.startFEN());
+        writer.printf("[Termination \"%s\"]%n%n", game.termination());
+
+        String[] FENParts = game.startFEN().split(" ");
+        boolean whiteToMove = FENParts[1].equals("w");
+        int moveNumber = Integer.parseInt(FENParts[5]);
+        StringBuilder line = new StringBuilder();
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < game.moves().size(); i++) {
+            if (whiteToMove) {
+                tokens.add(moveNumber + ".");
+            } else if (i == 0) {
+                tokens.add(moveNumber + "...");
+            }
+            tokens.add(game.moves().get(i));
+            if (!whiteToMove) {
+                ++moveNumber;
+            }
+            whiteToMove = !whiteToMove;
+        }
+        tokens.add(game.result());
+
+        // PGN lines are at most 80 characters
+        for (String token : tokens) {
+            if (!line.isEmpty() && line.length() + 1 + token.length() > 80) {
+                writer.println(line);
+                line.setLength(0);
+            }
+            if (!line.isEmpty()) {
+                line.append(' ');
+            }
+            line.append(token);
+        }
+        writer.println(line);
+        writer.println();
+        writer.flush();
+    }
+}
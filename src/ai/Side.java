@@ -0,0 +1,127 @@
+package ai;
+
+import static ai.BitBoards.*;
+
+/**
+ * Everything about a side that move generation would otherwise branch on: the direction its
+ * pawns move, its ranks, its castling squares and which bitboards are its own
+ * <br>Looked up once per node, so the generation loops don't test the side to move for every piece
+ */
+enum Side {
+    WHITE(8, RANK_3, RANK_8, 0b1, 0b10, WHITE_KING_RIGHT_CASTLE_OPEN, WHITE_KiNG_LEFT_CASTLE_OPEN,
+            WHITE_KING_START, BLACK_PAWN_POSSIBLE_CAPTURES) {
+        long pawns(BitBoards state) {
+            return state.whitePawns;
+        }
+
+        long knights(BitBoards state) {
+            return state.whiteKnights;
+        }
+
+        long bishops(BitBoards state) {
+            return state.whiteBishops;
+        }
+
+        long rooks(BitBoards state) {
+            return state.whiteRooks;
+        }
+
+        long queens(BitBoards state) {
+            return state.whiteQueens;
+        }
+
+        long king(BitBoards state) {
+            return state.whiteKing;
+        }
+
+        long enemyPieces(BitBoards state) {
+            return state.blackPieces;
+        }
+    },
+    BLACK(-8, RANK_6, RANK_1, 0b100, 0b1000, BLACK_KING_RIGHT_CASTLE_OPEN, BLACK_KING_LEFT_CASTLE_OPEN,
+            BLACK_KING_START, WHITE_PAWN_POSSIBLE_CAPTURES) {
+        long pawns(BitBoards state) {
+            return state.blackPawns;
+        }
+
+        long knights(BitBoards state) {
+            return state.blackKnights;
+        }
+
+        long bishops(BitBoards state) {
+            return state.blackBishops;
+        }
+
+        long rooks(BitBoards state) {
+            return state.blackRooks;
+        }
+
+        long queens(BitBoards state) {
+            return state.blackQueens;
+        }
+
+        long king(BitBoards state) {
+            return state.blackKing;
+        }
+
+        long enemyPieces(BitBoards state) {
+            return state.whitePieces;
+        }
+    };
+
+    // Square offset of a pawn move, and the matching rotation of a bitboard
+    final int forward;
+    private final int pushRotation;
+    // Rank a pawn reaches with its first single move, from where it may move again
+    final long doubleMoveRank;
+    final long promotionRank;
+    final int kingSideRight, queenSideRight;
+    // Squares between the king and the rook that have to be empty to castle
+    final long kingSideOpen, queenSideOpen;
+    final int kingStart;
+    // Indexed by a square, the squares from which a pawn of the side attacks it
+    final long[] pawnAttackers;
+
+    Side(int forward, long doubleMoveRank, long promotionRank, int kingSideRight, int queenSideRight,
+         long kingSideOpen, long queenSideOpen, int kingStart, long[] pawnAttackers) {
+        this.forward = forward;
+        this.pushRotation = forward & 63;
+        this.doubleMoveRank = doubleMoveRank;
+        this.promotionRank = promotionRank;
+        this.kingSideRight = kingSideRight;
+        this.queenSideRight = queenSideRight;
+        this.kingSideOpen = kingSideOpen;
+        this.queenSideOpen = queenSideOpen;
+        this.kingStart = kingStart;
+        this.pawnAttackers = pawnAttackers;
+    }
+
+    static Side toMove(BitBoards state) {
+        return state.whiteToMove ? WHITE : BLACK;
+    }
+
+    /**
+     * A rotation instead of a shift in either direction, which is the same for pawns since they
+     * are never on the rank they would wrap around from
+     *
+     * @param pawns pawns of the side
+     * @return the squares one step in front of the pawns
+     */
+    long push(long pawns) {
+        return Long.rotateLeft(pawns, pushRotation);
+    }
+
+    abstract long pawns(BitBoards state);
+
+    abstract long knights(BitBoards state);
+
+    abstract long bishops(BitBoards state);
+
+    abstract long rooks(BitBoards state);
+
+    abstract long queens(BitBoards state);
+
+    abstract long king(BitBoards state);
+
+    abstract long enemyPieces(BitBoards state);
+}
@@ -0,0 +1,216 @@
+package ai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static ai.BitBoards.*;
+
+/**
+ * Rook and bishop attacks of every square and blocker set, in one contiguous "fancy" magic
+ * table: the attacks of each square take as many entries as its magic index has values, and
+ * start at the offset of the square
+ * <br>The table is read from {@link #RESOURCE} when it is on the classpath and was written for
+ * the same magic numbers, and computed with ray walks otherwise
+ * <br>Usage: java ai.SliderAttacks [slider_attacks.bin]
+ * <br>Format: an 8-byte magic number, a 64-bit hash of the magic numbers and relevant bits the
+ * table was computed for, the number of entries as a 32-bit int, and the entries, all big-endian
+ */
+public final class SliderAttacks {
+    static final String RESOURCE = "Computations/slider_attacks.bin";
+    static final long MAGIC = 0x534C494445523031L; // "SLIDER01"
+    static final int HEADER_SIZE = 20;
+
+    // Index of the first entry of each square in the table
+    static final int[] ROOK_OFFSETS = new int[64];
+    static final int[] BISHOP_OFFSETS = new int[64];
+    static final int SIZE;
+    static final long[] ATTACKS;
+    // How the table was initialized, for the benchmark
+    static final boolean LOADED;
+    static final long INIT_NANOS;
+
+    static {
+        final long startTime = System.nanoTime();
+        int offset = 0;
+        for (int square = 0; square < 64; square++) {
+            ROOK_OFFSETS[square] = offset;
+            offset += 1 << ROOK_RELEVANT_BITS[square];
+        }
+        for (int square = 0; square < 64; square++) {
+            BISHOP_OFFSETS[square] = offset;
+            offset += 1 << BISHOP_RELEVANT_BITS[square];
+        }
+        SIZE = offset;
+
+        long[] attacks = null;
+        try (InputStream input = SliderAttacks.class.getResourceAsStream(RESOURCE)) {
+            if (input != null) {
+                attacks = load(ByteBuffer.wrap(input.readAllBytes()));
+            }
+        } catch (IOException e) {
+            System.err.println("Slider attacks not loaded: " + e.getMessage());
+        }
+        LOADED = attacks != null;
+        ATTACKS = LOADED ? attacks : compute();
+        INIT_NANOS = System.nanoTime() - startTime;
+    }
+
+    private SliderAttacks() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path out = Path.of(args.length > 0 ? args[0] : "src/ai/Computations/slider_attacks.bin");
+        write(compute(), out);
+        System.out.printf("Wrote %d slider attacks into %s (%d bytes), %s in %.1f ms at class initialization%n",
+                SIZE, out, Files.size(out), LOADED ? "loaded" : "computed", INIT_NANOS / 1e6);
+    }
+
+    /**
+     * @return the table computed with ray walks for every blocker set of every square
+     */
+    static long[] compute() {
+        long[] attacks = new long[SIZE];
+        for (int square = 0; square < 64; square++) {
+            int positions = 1 << ROOK_RELEVANT_BITS[square];
+            for (int position = 0; position < positions; position++) {
+                long blockers = occupancyVariation(position, ROOK_RELEVANT_BITS[square], ROOK_BLOCKER_MASK[square]);
+                int index = (int) ((blockers * ROOK_MAGICS[square]) >>> (64 - ROOK_RELEVANT_BITS[square]));
+                attacks[ROOK_OFFSETS[square] + index] = slidingPieceMoveHelper(square, blockers, true);
+            }
+        }
+
+        for (int square = 0; square < 64; square++) {
+            int positions = 1 << BISHOP_RELEVANT_BITS[square];
+            for (int position = 0; position < positions; position++) {
+                long blockers = occupancyVariation(position, BISHOP_RELEVANT_BITS[square],
+                        BISHOP_BLOCKER_MASK[square]);
+                int index = (int) ((blockers * BISHOP_MAGICS[square]) >>> (64 - BISHOP_RELEVANT_BITS[square]));
+                attacks[BISHOP_OFFSETS[square] + index] = slidingPieceMoveHelper(square, blockers, false);
+            }
+        }
+        return attacks;
+    }
+
+    /**
+     * @param data whole table file
+     * @return the table
+     * @throws IOException if the data is not a table for the current magic numbers
+     */
+    static long[] load(ByteBuffer data) throws IOException {
+        if (data.capacity() != HEADER_SIZE + SIZE * Long.BYTES || data.getLong(0) != MAGIC) {
+            throw new IOException("Not a slider attack table");
+        }
+        if (data.getLong(8) != magicsHash() || data.getInt(16) != SIZE) {
+            throw new IOException("Slider attack table was written for other magic numbers");
+        }
+        long[] attacks = new long[SIZE];
+        data.slice(HEADER_SIZE, SIZE * Long.BYTES).asLongBuffer().get(attacks);
+        return attacks;
+    }
+
+    /**
+     * @param attacks table to write, see {@link #compute}
+     * @param out     file to write
+     * @throws IOException if the file can't be written
+     */
+    static void write(long[] attacks, Path out) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(out)))) {
+            output.writeLong(MAGIC);
+            output.writeLong(magicsHash());
+            output.writeInt(attacks.length);
+            for (long attack : attacks) {
+                output.writeLong(attack);
+            }
+        }
+    }
+
+    /**
+     * @return hash of everything the layout and content of the table depend on
+     */
+    private static long magicsHash() {
+        long hash = 17;
+        for (int square = 0; square < 64; square++) {
+            hash = hash * 31 + ROOK_MAGICS[square];
+            hash = hash * 31 + BISHOP_MAGICS[square];
+            hash = hash * 31 + ROOK_RELEVANT_BITS[square];
+            hash = hash * 31 + BISHOP_RELEVANT_BITS[square];
+        }
+        return hash;
+    }
+
+    private static long occupancyVariation(int index, int bits, long mask) {
+        long result = 0L;
+        for (int i = 0; i < bits; i++) {
+            int occupancyIndex = Long.numberOfTrailingZeros(mask);
+            mask ^= SQUARE_TO_BITBOARD[occupancyIndex];
+
+            if ((1 << i & index) != 0) {
+                result |= 1L << occupancyIndex;
+            }
+        }
+
+        return result;
+    }
+
+    private static long slidingPieceMoveHelper(int index, long blockers, boolean rook) {
+        long attack = 0L;
+
+        if (rook) {
+            for (int up = index + 8; up <= H8; up += 8) {
+                attack |= SQUARE_TO_BITBOARD[up];
+                if ((blockers & SQUARE_TO_BITBOARD[up]) != 0) {
+                    break;
+                }
+            }
+            for (int down = index - 8; down >= A1; down -= 8) {
+                attack |= SQUARE_TO_BITBOARD[down];
+                if ((blockers & SQUARE_TO_BITBOARD[down]) != 0) {
+                    break;
+                }
+            }
+            for (int left = index - 1; left >= A1 && left % 8 != 7; left--) {
+                attack |= SQUARE_TO_BITBOARD[left];
+                if ((blockers & SQUARE_TO_BITBOARD[left]) != 0) {
+                    break;
+                }
+            }
+            for (int right = index + 1; right <= H8 && right % 8 != 0; right++) {
+                attack |= SQUARE_TO_BITBOARD[right];
+                if ((blockers & SQUARE_TO_BITBOARD[right]) != 0) {
+                    break;
+                }
+            }
+        } else {
+            for (int upLeft = index + 7; upLeft <= H8 && upLeft % 8 != 7; upLeft += 7) {
+                attack |= SQUARE_TO_BITBOARD[upLeft];
+                if ((blockers & SQUARE_TO_BITBOARD[upLeft]) != 0) {
+                    break;
+                }
+            }
+            for (int upRight = index + 9; upRight <= H8 && upRight % 8 != 0; upRight += 9) {
+                attack |= SQUARE_TO_BITBOARD[upRight];
+                if ((blockers & SQUARE_TO_BITBOARD[upRight]) != 0) {
+                    break;
+                }
+            }
+            for (int downLeft = index - 9; downLeft >= A1 && downLeft % 8 != 7; downLeft -= 9) {
+                attack |= SQUARE_TO_BITBOARD[downLeft];
+                if ((blockers & SQUARE_TO_BITBOARD[downLeft]) != 0) {
+                    break;
+                }
+            }
+            for (int downRight = index - 7; downRight >= A1 && downRight % 8 != 0; downRight -= 7) {
+                attack |= SQUARE_TO_BITBOARD[downRight];
+                if ((blockers & SQUARE_TO_BITBOARD[downRight]) != 0) {
+                    break;
+                }
+            }
+        }
+        return attack;
+    }
+}
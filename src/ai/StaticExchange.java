@@ -0,0 +1,107 @@
+package ai;
+
+import static ai.BitBoards.*;
+
+/**
+ * Static exchange evaluation: the material a capture wins or loses once both sides have made
+ * every profitable recapture on its square, always recapturing with their least valuable piece
+ * <br>Sliders behind a capturing piece join the exchange as soon as it leaves, by looking up the
+ * slider attacks of the square again with the capturing piece removed from the occupancy
+ */
+final class StaticExchange {
+    // A capture and recapture by each of the 30 other pieces
+    private static final int MAX_EXCHANGES = 32;
+
+    private StaticExchange() {
+    }
+
+    /**
+     * @param state   current state
+     * @param capture capture or promotion of the side to move
+     * @return material won by the side to move in centipawns, negative if the capture loses material
+     */
+    static int evaluate(BitBoards state, Move capture) {
+        int square = capture.end();
+        long occupancy = state.allPieces;
+        int[] gain = new int[MAX_EXCHANGES];
+        int attackerValue;
+        if (capture.moveType() == Move.MoveType.EN_PASSANT) {
+            gain[0] = PAWN_VAL;
+            occupancy ^= SQUARE_TO_BITBOARD[state.whiteToMove ? square - 8 : square + 8];
+            attackerValue = PAWN_VAL;
+        } else {
+            gain[0] = (occupancy & SQUARE_TO_BITBOARD[square]) == 0 ? 0 : pieceValue(state, SQUARE_TO_BITBOARD[square]);
+            attackerValue = pieceValue(state, SQUARE_TO_BITBOARD[capture.start()]);
+        }
+        if (capture.moveType() == Move.MoveType.PROMOTE_QUEEN) {
+            gain[0] += QUEEN_VAL - PAWN_VAL;
+            attackerValue = QUEEN_VAL;
+        }
+
+        long diagonalSliders = state.whiteBishops | state.blackBishops | state.whiteQueens | state.blackQueens;
+        long straightSliders = state.whiteRooks | state.blackRooks | state.whiteQueens | state.blackQueens;
+        long attacker = SQUARE_TO_BITBOARD[capture.start()];
+        long attackers = state.attackersTo(square, occupancy);
+        boolean white = state.whiteToMove;
+        int depth = 0;
+        while (true) {
+            ++depth;
+            // Score if the piece that just captured is taken in turn
+            gain[depth] = attackerValue - gain[depth - 1];
+            // Neither side can gain from continuing, whatever comes next
+            if (Math.max(-gain[depth - 1], gain[depth]) < 0) {
+                break;
+            }
+            occupancy ^= attacker;
+            attackers &= occupancy;
+            // X-rays through the piece that just captured
+            attackers |= (MoveGeneration.getBishopAttacks(square, occupancy) & diagonalSliders |
+                    MoveGeneration.getRookAttacks(square, occupancy) & straightSliders) & occupancy;
+            white = !white;
+            attacker = leastValuableAttacker(state, attackers & (white ? state.whitePieces : state.blackPieces));
+            if (attacker == 0) {
+                break;
+            }
+            attackerValue = pieceValue(state, attacker);
+        }
+        // Each side can stop capturing when it would only lose more
+        while (--depth > 0) {
+            gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+        }
+        return gain[0];
+    }
+
+    /**
+     * @return bitboard of the least valuable of the attackers, or 0 if there are none
+     */
+    private static long leastValuableAttacker(BitBoards state, long attackers) {
+        long candidates;
+        if ((candidates = attackers & (state.whitePawns | state.blackPawns)) != 0 ||
+                (candidates = attackers & (state.whiteKnights | state.blackKnights)) != 0 ||
+                (candidates = attackers & (state.whiteBishops | state.blackBishops)) != 0 ||
+                (candidates = attackers & (state.whiteRooks | state.blackRooks)) != 0 ||
+                (candidates = attackers & (state.whiteQueens | state.blackQueens)) != 0) {
+            return candidates & -candidates;
+        }
+        return attackers & (state.whiteKing | state.blackKing);
+    }
+
+    /**
+     * @param square bitboard of a square with a piece on it
+     * @return material value of the piece, with the king worth more than everything else
+     */
+    static int pieceValue(BitBoards state, long square) {
+        if (((state.whitePawns | state.blackPawns) & square) != 0) {
+            return PAWN_VAL;
+        } else if (((state.whiteKnights | state.blackKnights) & square) != 0) {
+            return KNIGHT_VAL;
+        } else if (((state.whiteBishops | state.blackBishops) & square) != 0) {
+            return BISHOP_VAL;
+        } else if (((state.whiteRooks | state.blackRooks) & square) != 0) {
+            return ROOK_VAL;
+        } else if (((state.whiteQueens | state.blackQueens) & square) != 0) {
+            return QUEEN_VAL;
+        }
+        return KING_VAL;
+    }
+}
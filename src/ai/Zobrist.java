@@ -0,0 +1,78 @@
+package ai;
+
+import java.util.SplittableRandom;
+
+/**
+ * 64-bit position keys made by XOR-ing a random number for every piece on its square, the
+ * castling rights, the en passant file, and the side to move
+ */
+final class Zobrist {
+    // Fixed seed so keys stay the same between runs and can be stored in files
+    private static final long SEED = 0x43484553534B4559L;
+
+    // Indexed by piece * 64 + square, with pieces ordered as in PIECES
+    static final long[] PIECE_SQUARE = new long[12 * 64];
+    // Indexed by the bit of the right in BitBoards.castleRights
+    static final long[] CASTLING = new long[4];
+    static final long[] EN_PASSANT_FILE = new long[8];
+    static final long WHITE_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < PIECE_SQUARE.length; i++) {
+            PIECE_SQUARE[i] = random.nextLong();
+        }
+        for (int i = 0; i < CASTLING.length; i++) {
+            CASTLING[i] = random.nextLong();
+        }
+        for (int i = 0; i < EN_PASSANT_FILE.length; i++) {
+            EN_PASSANT_FILE[i] = random.nextLong();
+        }
+        WHITE_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * @param state position to hash
+     * @return the key of the position
+     */
+    static long key(BitBoards state) {
+        long[] pieces = {state.whitePawns, state.whiteKnights, state.whiteBishops, state.whiteRooks,
+                state.whiteQueens, state.whiteKing, state.blackPawns, state.blackKnights, state.blackBishops,
+                state.blackRooks, state.blackQueens, state.blackKing};
+        long key = 0;
+        for (int piece = 0; piece < pieces.length; piece++) {
+            for (long bitBoard = pieces[piece]; bitBoard != 0; bitBoard &= bitBoard - 1) {
+                key ^= PIECE_SQUARE[piece * 64 + Long.numberOfTrailingZeros(bitBoard)];
+            }
+        }
+        for (int right = 0; right < CASTLING.length; right++) {
+            if ((state.castleRights & (1 << right)) != 0) {
+                key ^= CASTLING[right];
+            }
+        }
+        if (enPassantCapturePossible(state)) {
+            key ^= EN_PASSANT_FILE[state.enPassantIndex & 7];
+        }
+        if (state.whiteToMove) {
+            key ^= WHITE_TO_MOVE;
+        }
+        return key;
+    }
+
+    /**
+     * The en passant square only changes the key if a pawn can capture on it, so positions that
+     * only differ by an unusable en passant square get the same key
+     */
+    static boolean enPassantCapturePossible(BitBoards state) {
+        if (state.enPassantIndex == -1) {
+            return false;
+        }
+        long capturers = state.whiteToMove ?
+                BitBoards.BLACK_PAWN_POSSIBLE_CAPTURES[state.enPassantIndex] & state.whitePawns :
+                BitBoards.WHITE_PAWN_POSSIBLE_CAPTURES[state.enPassantIndex] & state.blackPawns;
+        return capturers != 0;
+    }
+}
@@ -216,6 +216,8 @@ public class Board {
      * @throws IllegalArgumentException if the move is invalid
      */
     public Piece movePiece(Move move) throws IllegalArgumentException {
+        MoveEvent event = new MoveEvent();
+        event.begin();
         Notation oldPos = move.start();
         Notation newPos = move.end();
         if (oldPos.equals(newPos)) {
@@ -256,6 +258,13 @@ public class Board {
 
         gameStates.add(new GameState(getFEN(), turn, currentPlayerColor == WHITE ?
                 whiteStatus.gameStatus : blackStatus.gameStatus));
+        if (event.shouldCommit()) {
+            event.move = move.toString();
+            event.turn = turn - 1;
+            event.captured = captured == null ? null : captured.getColor() + " " + captured.getType();
+            event.gameStatus = gameStatus().name();
+            event.commit();
+        }
         return captured;
     }
 
@@ -354,6 +363,8 @@ public class Board {
     }
 
     private void generateAllLegalMoves(PlayerStatus status) {
+        LegalMovesEvent event = new LegalMovesEvent();
+        event.begin();
         for (Notation currentPosition : Notation.ALL_VALUES) {
             if (!isFriendly(status.color, currentPosition)) {
                 continue;
@@ -364,6 +375,11 @@ public class Board {
                             , m, status.king)).collect(Collectors.toSet());
             status.allLegalMoves.put(piece, possibleMoves);
         }
+        if (event.shouldCommit()) {
+            event.color = status.color.name();
+            event.legalMoves = status.allLegalMoves.values().stream().mapToInt(Set::size).sum();
+            event.commit();
+        }
     }
 
     /**
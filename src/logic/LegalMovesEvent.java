@@ -0,0 +1,22 @@
+package logic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering the regeneration of all legal moves of a player
+ */
+@Name("chess.LegalMoveGeneration")
+@Label("Legal Move Generation")
+@Category({"Chess", "Board"})
+@Description("Regeneration of all legal moves of a player")
+final class LegalMovesEvent extends Event {
+    @Label("Color")
+    String color;
+
+    @Label("Legal Moves")
+    int legalMoves;
+}
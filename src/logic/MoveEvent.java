@@ -0,0 +1,28 @@
+package logic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering {@link Board#movePiece(Move)}, including the update of the game status
+ */
+@Name("chess.MoveApply")
+@Label("Move Apply")
+@Category({"Chess", "Board"})
+@Description("Move applied to the board")
+final class MoveEvent extends Event {
+    @Label("Move")
+    String move;
+
+    @Label("Turn")
+    int turn;
+
+    @Label("Captured")
+    String captured;
+
+    @Label("Game Status")
+    String gameStatus;
+}
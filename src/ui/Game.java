@@ -380,6 +380,9 @@ class UIBoard extends JPanel {
     private void makeMove(Notation endPos) {
         // Debug
         System.out.println("Move: " + selection.currentlySelectedPiece + ": " + selection.squareSelected + endPos);
+        // Covers the reply of the CPU too, since it is made on this thread
+        UIMoveEvent event = new UIMoveEvent();
+        event.begin();
 
         Set<Move> selectedMoves =
                 selection.currentGreenSquares.stream().filter(m -> m.end().equals(endPos)).collect(Collectors.toSet());
@@ -431,6 +434,12 @@ class UIBoard extends JPanel {
                     // User can still click but no action will be taken
                     setInteraction(false);
                 }
+                if (event.shouldCommit()) {
+                    event.move = selectedMove.toString();
+                    event.cpuReply = ai.aiPlayer;
+                    event.gameStatus = logicBoard.gameStatus().name();
+                    event.commit();
+                }
             } catch (IllegalArgumentException e) {
                 System.err.println("Bad argument.");
                 e.printStackTrace();
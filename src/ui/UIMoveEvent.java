@@ -0,0 +1,26 @@
+package ui;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering a move made by clicking the board, including the reply of the CPU when it
+ * is playing, since the reply is made on the event dispatch thread
+ */
+@Name("chess.UIMove")
+@Label("UI Move")
+@Category({"Chess", "UI"})
+@Description("Move made on the graphical board")
+final class UIMoveEvent extends Event {
+    @Label("Move")
+    String move;
+
+    @Label("CPU Playing")
+    boolean cpuReply;
+
+    @Label("Game Status")
+    String gameStatus;
+}
@@ -0,0 +1,82 @@
+package ai;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernels on the widest vectors of the machine, which needs --add-modules jdk.incubator.vector
+ * to compile and to run, see {@link NnueKernels#best}
+ * <br>Kept out of src so the engine compiles without the incubator module, and compiled on its own:
+ * javac --add-modules jdk.incubator.vector -cp out -d out vector/ai/*.java
+ */
+final class VectorNnueKernels implements NnueKernels {
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // As many shorts as ints fit in a vector, to widen them to ints
+    private static final VectorSpecies<Short> HALF_SHORTS =
+            VectorSpecies.of(short.class, VectorShape.forBitSize(INTS.vectorBitSize() / 2));
+
+    @Override
+    public void add(short[] accumulator, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                    .add(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    @Override
+    public void subtract(short[] accumulator, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                    .sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    @Override
+    public void clip(short[] accumulator, int max, int[] inputs, int offset) {
+        int i = 0;
+        for (int bound = HALF_SHORTS.loopBound(accumulator.length); i < bound; i += HALF_SHORTS.length()) {
+            ((IntVector) ShortVector.fromArray(HALF_SHORTS, accumulator, i).convertShape(VectorOperators.S2I, INTS, 0))
+                    .max(0).min(max).intoArray(inputs, offset + i);
+        }
+        for (; i < accumulator.length; i++) {
+            inputs[offset + i] = Math.clamp(accumulator[i], 0, max);
+        }
+    }
+
+    @Override
+    public void dense(int[] inputs, int[] weights, int[] biases, int[] outputs) {
+        int bound = INTS.loopBound(inputs.length);
+        for (int output = 0; output < outputs.length; output++) {
+            int row = output * inputs.length;
+            IntVector sums = IntVector.zero(INTS);
+            int i = 0;
+            for (; i < bound; i += INTS.length()) {
+                sums = IntVector.fromArray(INTS, inputs, i).mul(IntVector.fromArray(INTS, weights, row + i)).add(sums);
+            }
+            int sum = biases[output] + sums.reduceLanes(VectorOperators.ADD);
+            for (; i < inputs.length; i++) {
+                sum += inputs[i] * weights[row + i];
+            }
+            outputs[output] = sum;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "vector " + SHORTS.vectorBitSize() + "-bit";
+    }
+}